@@ -1,6 +1,9 @@
 package io.metersphere.platform.client;
 
+import io.metersphere.platform.api.AbstractPlatform;
 import io.metersphere.platform.api.BaseClient;
+import io.metersphere.platform.cache.CapabilityProfile;
+import io.metersphere.platform.cache.LocalCache;
 import io.metersphere.platform.domain.*;
 import io.metersphere.plugin.exception.MSPluginException;
 import io.metersphere.plugin.utils.JSON;
@@ -13,6 +16,7 @@ import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.RestTemplate;
 
 import java.io.File;
 import java.io.InputStream;
@@ -20,23 +24,122 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 public abstract class JiraAbstractClient extends BaseClient {
 
-    protected  String ENDPOINT;
+    protected final String ENDPOINT;
 
     protected  String PREFIX;
 
-    protected  String USER_NAME;
+    protected final String USER_NAME;
 
-    protected  String PASSWD;
+    protected final String PASSWD;
 
-    protected  String TOKEN;
+    protected final String TOKEN;
 
-    protected  String AUTH_TYPE;
+    protected final String AUTH_TYPE;
 
     private static final String GREENHOPPER_V1_BASE_URL = "/rest/greenhopper/1.0";
 
+    private static final String AGILE_V1_BASE_URL = "/rest/agile/1.0";
+
+    /**
+     * 没有安装 Jira Software 时没有 agile 接口
+     */
+    private static final String AGILE_CAPABILITY = "agile";
+
+    private static final int AGILE_PAGE_SIZE = 50;
+
+    /**
+     * 批量获取缺陷时每次请求的最大数量
+     */
+    public static final int BULK_FETCH_SIZE = 100;
+
+    /**
+     * jira server 没有 bulkfetch 接口，第一次返回 404 后不再尝试
+     */
+    private static final String BULK_FETCH_CAPABILITY = "issue.bulkfetch";
+
+    /**
+     * 旧版本 jira server 的 validateQuery 只支持 true/false，传 warn 返回 400 后不再使用
+     */
+    private static final String VALIDATE_QUERY_WARN_CAPABILITY = "search.validateQuery.warn";
+
+    /**
+     * 分页查询创建缺陷字段时每页的数量
+     */
+    private static final int CREATE_META_PAGE_SIZE = 100;
+
+    /**
+     * Jira 9 之前的版本没有分页的 createmeta 接口，确认不支持后直接使用旧接口
+     */
+    private static final String PAGED_CREATE_META_CAPABILITY = "issue.createmeta.paged";
+
+    /**
+     * Jira Cloud 使用 /users/search 分页查询所有用户，Jira Server 没有该接口
+     */
+    private static final String USERS_SEARCH_CAPABILITY = "users.search";
+
+    /**
+     * SaaS 的 jira 才有 /issuetype/project 接口
+     */
+    private static final String PROJECT_ISSUE_TYPE_CAPABILITY = "issuetype.project";
+
+    /**
+     * 搜索用户的参数，不同版本分别使用 query 或 username
+     */
+    private static final String USER_SEARCH_PARAM_CAPABILITY = "user.search.param";
+
+    /**
+     * 同一地址的客户端共用连接池，不同账号或修改认证信息后新建客户端时不再新建连接池
+     * 超出数量淘汰的连接池不关闭，还在使用的客户端可以继续使用，不再引用后随客户端释放
+     */
+    private static final LocalCache<String, RestTemplate> REST_TEMPLATES = new LocalCache<>(50);
+
+    /**
+     * 配置在创建时确定，之后不再修改，同一配置的客户端可以在多个线程间共享
+     */
+    protected JiraAbstractClient(JiraConfig config) {
+        super(getRestTemplate(config));
+        if (config == null) {
+            MSPluginException.throwException("config is null");
+        }
+        ENDPOINT = getEndpoint(config);
+        USER_NAME = config.getAccount();
+        PASSWD = config.getPassword();
+        TOKEN = config.getToken();
+        AUTH_TYPE = config.getAuthType();
+    }
+
+    public String getEndpoint() {
+        return ENDPOINT;
+    }
+
+    private static String getEndpoint(JiraConfig config) {
+        String url = config.getUrl();
+        if (StringUtils.isNotBlank(url) && url.endsWith("/")) {
+            url = url.substring(0, url.length() - 1);
+        }
+        return url;
+    }
+
+    private static RestTemplate getRestTemplate(JiraConfig config) {
+        String endpoint = config == null ? null : getEndpoint(config);
+        if (StringUtils.isBlank(endpoint)) {
+            return createRestTemplate();
+        }
+        // 并发创建时可能多创建一个，没有连接，不需要关闭
+        return REST_TEMPLATES.get(endpoint, k -> createRestTemplate());
+    }
+
+    /**
+     * 地址和认证信息，不同账号查询的结果可能不同，用于区分缓存
+     */
+    public List<String> getCredentialKey() {
+        return Arrays.asList(ENDPOINT, AUTH_TYPE, USER_NAME, PASSWD, TOKEN);
+    }
+
     public JiraIssue getIssues(String issuesId) {
         LogUtil.info("getIssues: " + issuesId);
         ResponseEntity<String> responseEntity;
@@ -44,7 +147,236 @@ public abstract class JiraAbstractClient extends BaseClient {
         return  (JiraIssue) getResultForObject(JiraIssue.class, responseEntity);
     }
 
+    /**
+     * 批量获取缺陷，每次请求最多 BULK_FETCH_SIZE 个
+     * jira cloud 使用 bulkfetch 接口，不支持时使用 key in (...) 查询
+     * 不存在或没有权限的缺陷不会返回，也不会抛出异常，由调用方比较返回结果判断
+     *
+     * @param issueKeys 缺陷的 key 或 id
+     * @param fields    返回的字段，为空则返回全部
+     */
+    public List<JiraIssue> getIssuesByKeys(List<String> issueKeys, List<String> fields) {
+        List<JiraIssue> issues = new ArrayList<>();
+        for (int i = 0; i < issueKeys.size(); i += BULK_FETCH_SIZE) {
+            List<String> keys = issueKeys.subList(i, Math.min(i + BULK_FETCH_SIZE, issueKeys.size()));
+            List<JiraIssue> result = null;
+            if (getCapabilities().isSupported(BULK_FETCH_CAPABILITY)) {
+                result = bulkFetchIssues(keys, fields);
+            }
+            if (result == null) {
+                result = searchIssuesByKeys(keys, fields, null);
+            }
+            issues.addAll(result);
+        }
+        return issues;
+    }
+
+    /**
+     * 查询按 key 没有获取到的缺陷，缺陷移动到其他项目后 key 会变化，按原来的 key 仍能查到
+     * 通过变更记录中的 Key 字段对应原来的 key，变更记录对应不上时逐个查询确认
+     *
+     * @param issueKeys 没有获取到的缺陷的 key
+     * @param fields    返回的字段，为空则返回全部
+     * @return 原来的 key 和对应的缺陷，没有的已删除或没有权限
+     */
+    public Map<String, JiraIssue> getMovedIssues(List<String> issueKeys, List<String> fields) {
+        Map<String, JiraIssue> movedIssues = new HashMap<>();
+        for (int i = 0; i < issueKeys.size(); i += BULK_FETCH_SIZE) {
+            List<String> keys = issueKeys.subList(i, Math.min(i + BULK_FETCH_SIZE, issueKeys.size()));
+            Set<String> keySet = new HashSet<>(keys);
+            Set<String> matchedIds = new HashSet<>();
+            List<JiraIssue> result = searchIssuesByKeys(keys, fields, "changelog");
+            for (JiraIssue issue : result) {
+                List<String> usedKeys = getHistoryKeys(issue);
+                usedKeys.add(issue.getKey());
+                usedKeys.add(issue.getId());
+                for (String key : usedKeys) {
+                    if (keySet.contains(key)) {
+                        movedIssues.put(key, issue);
+                        matchedIds.add(issue.getId());
+                    }
+                }
+            }
+            if (result.size() > matchedIds.size()) {
+                // 变更记录不完整，没有对应上的 key 单独确认
+                for (String key : keys) {
+                    if (!movedIssues.containsKey(key)) {
+                        try {
+                            movedIssues.put(key, getIssues(key));
+                        } catch (HttpClientErrorException e) {
+                            if (e.getRawStatusCode() != 404) {
+                                throw e;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return movedIssues;
+    }
+
+    /**
+     * @return 变更记录中缺陷用过的 key
+     */
+    private List<String> getHistoryKeys(JiraIssue issue) {
+        List<String> keys = new ArrayList<>();
+        Map<String, Object> changelog = issue.getChangelog();
+        if (changelog == null || !(changelog.get("histories") instanceof List)) {
+            return keys;
+        }
+        for (Object history : (List) changelog.get("histories")) {
+            Object items = history instanceof Map ? ((Map) history).get("items") : null;
+            if (!(items instanceof List)) {
+                continue;
+            }
+            for (Object item : (List) items) {
+                if (item instanceof Map && "key".equalsIgnoreCase(String.valueOf(((Map) item).get("field")))) {
+                    Object fromString = ((Map) item).get("fromString");
+                    if (fromString != null) {
+                        keys.add(fromString.toString());
+                    }
+                }
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * @return 接口不可用时返回 null
+     */
+    private List<JiraIssue> bulkFetchIssues(List<String> issueKeys, List<String> fields) {
+        Map<String, Object> param = new LinkedHashMap<>();
+        param.put("issueIdsOrKeys", issueKeys);
+        param.put("fields", CollectionUtils.isEmpty(fields) ? Collections.singletonList("*all") : fields);
+        HttpEntity<String> requestEntity = new HttpEntity<>(JSON.toJSONString(param), getAuthJsonHeader());
+        try {
+            ResponseEntity<String> response = restTemplate.exchange(getBaseUrl() + "/issue/bulkfetch", HttpMethod.POST, requestEntity, String.class);
+            return ((JiraIssueListResponse) getResultForObject(JiraIssueListResponse.class, response)).getIssues();
+        } catch (HttpClientErrorException e) {
+            if (e.getRawStatusCode() == 404 || e.getRawStatusCode() == 405) {
+                getCapabilities().setSupported(BULK_FETCH_CAPABILITY, false);
+            } else {
+                LogUtil.error(e.getMessage(), e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param expand 需要展开的内容，如 changelog，为空则不展开
+     */
+    private List<JiraIssue> searchIssuesByKeys(List<String> issueKeys, List<String> fields, String expand) {
+        String keys = issueKeys.stream()
+                .map(key -> "\"" + key.replace("\\", "\\\\").replace("\"", "\\\"") + "\"")
+                .collect(Collectors.joining(","));
+        Map<String, Object> param = new LinkedHashMap<>();
+        param.put("jql", "issuekey in (" + keys + ")");
+        param.put("startAt", 0);
+        param.put("maxResults", issueKeys.size());
+        param.put("fields", CollectionUtils.isEmpty(fields) ? Collections.singletonList("*all") : fields);
+        if (StringUtils.isNotBlank(expand)) {
+            param.put("expand", Collections.singletonList(expand));
+        }
+        CapabilityProfile capabilities = getCapabilities();
+        if (capabilities.isSupported(VALIDATE_QUERY_WARN_CAPABILITY)) {
+            // 有不存在的 key 时只返回警告，不影响其他缺陷
+            param.put("validateQuery", "warn");
+            try {
+                return searchIssues(param);
+            } catch (HttpClientErrorException e) {
+                if (e.getRawStatusCode() != 400) {
+                    throw e;
+                }
+                // 不支持 warn 时关闭校验重试，重试成功说明 400 是 warn 导致的
+                param.put("validateQuery", false);
+                List<JiraIssue> issues = searchIssues(param);
+                capabilities.setSupported(VALIDATE_QUERY_WARN_CAPABILITY, false);
+                return issues;
+            }
+        }
+        // 不校验时不存在的 key 会被忽略
+        param.put("validateQuery", false);
+        return searchIssues(param);
+    }
+
+    private List<JiraIssue> searchIssues(Map<String, Object> param) {
+        HttpEntity<String> requestEntity = new HttpEntity<>(JSON.toJSONString(param), getAuthJsonHeader());
+        ResponseEntity<String> response = restTemplate.exchange(getBaseUrl() + "/search", HttpMethod.POST, requestEntity, String.class);
+        return ((JiraIssueListResponse) getResultForObject(JiraIssueListResponse.class, response)).getIssues();
+    }
+
     public Map<String, JiraCreateMetadataResponse.Field> getCreateMetadata(String projectKey, String issueType) {
+        Map<String, JiraCreateMetadataResponse.Field> fields = null;
+        if (getCapabilities().isSupported(PAGED_CREATE_META_CAPABILITY)) {
+            fields = getPagedCreateMetadata(projectKey, issueType);
+        }
+        if (fields == null) {
+            fields = getLegacyCreateMetadata(projectKey, issueType);
+            // 旧接口能查到说明 404 不是项目或缺陷类型不存在导致的
+            getCapabilities().setSupported(PAGED_CREATE_META_CAPABILITY, false);
+        }
+        fields.remove("project");
+        fields.remove("issuetype");
+        return fields;
+    }
+
+    /**
+     * 使用 Jira 9 及 Jira Cloud 的分页接口逐页查询字段，不会一次返回所有项目和缺陷类型的数据
+     *
+     * @return 接口不存在时返回 null
+     */
+    private Map<String, JiraCreateMetadataResponse.Field> getPagedCreateMetadata(String projectKey, String issueType) {
+        String url = getBaseUrl() + "/issue/createmeta/{1}/issuetypes/{2}?startAt={3}&maxResults={4}";
+        Map<String, JiraCreateMetadataResponse.Field> fields = new LinkedHashMap<>();
+        int startAt = 0;
+        while (true) {
+            ResponseEntity<String> response = null;
+            try {
+                response = restTemplate.exchange(url, HttpMethod.GET, getAuthHttpEntity(), String.class,
+                        projectKey, issueType, startAt, CREATE_META_PAGE_SIZE);
+            } catch (HttpClientErrorException e) {
+                if (e.getRawStatusCode() == 404 && startAt == 0) {
+                    return null;
+                }
+                LogUtil.error(e.getMessage(), e);
+                MSPluginException.throwException(e.getMessage());
+            } catch (Exception e) {
+                LogUtil.error(e.getMessage(), e);
+                MSPluginException.throwException(e.getMessage());
+            }
+            JiraCreateMetaFieldResponse page = (JiraCreateMetaFieldResponse) getResultForObject(JiraCreateMetaFieldResponse.class, response);
+            List<JiraCreateMetadataResponse.Field> pageFields = page.getValues() != null ? page.getValues() : page.getFields();
+            if (CollectionUtils.isEmpty(pageFields)) {
+                break;
+            }
+            pageFields.forEach(field -> {
+                // Jira Server 只返回 fieldId，和旧接口一样设置 key
+                if (StringUtils.isBlank(field.getKey())) {
+                    field.setKey(field.getFieldId());
+                }
+                if (StringUtils.isNotBlank(field.getKey())) {
+                    fields.put(field.getKey(), field);
+                }
+            });
+            startAt += pageFields.size();
+            if (isLastPage(page, startAt, pageFields.size())) {
+                break;
+            }
+        }
+        return fields;
+    }
+
+    private boolean isLastPage(JiraCreateMetaFieldResponse page, int startAt, int pageSize) {
+        if (page.getIsLast() != null) {
+            return page.getIsLast();
+        }
+        if (page.getTotal() != null) {
+            return startAt >= page.getTotal();
+        }
+        return pageSize < CREATE_META_PAGE_SIZE;
+    }
+
+    private Map<String, JiraCreateMetadataResponse.Field> getLegacyCreateMetadata(String projectKey, String issueType) {
         String url = getBaseUrl() + "/issue/createmeta?projectKeys={1}&issuetypeIds={2}&expand=projects.issuetypes.fields";
         ResponseEntity<String> response = null;
         Map<String, JiraCreateMetadataResponse.Field> fields = null;
@@ -61,20 +393,23 @@ public abstract class JiraAbstractClient extends BaseClient {
             LogUtil.error(e);
             MSPluginException.throwException("请检查服务集成信息或Jira项目ID");
         }
-        fields.remove("project");
-        fields.remove("issuetype");
         return fields;
     }
 
     public List<JiraIssueType> getIssueType(String projectKey) {
         JiraIssueProject project = getProject(projectKey);
+        CapabilityProfile capabilities = getCapabilities();
+        if (!capabilities.isSupported(PROJECT_ISSUE_TYPE_CAPABILITY)) {
+            return project.getIssueTypes();
+        }
         String url = getUrl("/issuetype/project?projectId={0}");
         ResponseEntity<String> response = null;
         try {
             response = restTemplate.exchange(url, HttpMethod.GET, getAuthHttpEntity(), String.class, project.getId());
         } catch (HttpClientErrorException e) {
-            if (e.getRawStatusCode() == 404) { // SaaS 的jira才有这个接口，报错则调用其他接口
-                return this.getProject(projectKey).getIssueTypes();
+            if (e.getRawStatusCode() == 404) { // SaaS 的jira才有这个接口，报错则使用项目中的缺陷类型
+                capabilities.setSupported(PROJECT_ISSUE_TYPE_CAPABILITY, false);
+                return project.getIssueTypes();
             }
             LogUtil.error(e.getMessage(), e);
             MSPluginException.throwException(e.getMessage());
@@ -119,15 +454,28 @@ public abstract class JiraAbstractClient extends BaseClient {
         int startAt = 0;
         int maxResults = 100;
         String baseUrl = getBaseUrl() + "/user/search?maxResults=" + maxResults + "&startAt=" + startAt;
-        String url = baseUrl + "&query=" + (StringUtils.isNotBlank(query) ? query : "");
+        String queryUrl = baseUrl + "&query=" + (StringUtils.isNotBlank(query) ? query : "");
+        String usernameUrl = baseUrl + "&username=" + (StringUtils.isNotBlank(query) ? query : "\"\"");
+        CapabilityProfile capabilities = getCapabilities();
+        String param = capabilities.get(USER_SEARCH_PARAM_CAPABILITY);
         ResponseEntity<String> response = null;
-        try {
-            response = restTemplate.exchange(url, HttpMethod.GET, getAuthHttpEntity(), String.class);
-        } catch (Exception e) {
+        if (!"username".equals(param)) {
+            try {
+                response = restTemplate.exchange(queryUrl, HttpMethod.GET, getAuthHttpEntity(), String.class);
+                capabilities.put(USER_SEARCH_PARAM_CAPABILITY, "query");
+            } catch (Exception e) {
+                if ("query".equals(param)) {
+                    // 已确认支持 query 参数，不是版本问题
+                    LogUtil.error(e);
+                    return new ArrayList<>();
+                }
+            }
+        }
+        if (response == null) {
             try {
                 // 兼容不同版本查询
-                url = baseUrl + "&username=" + (StringUtils.isNotBlank(query) ? query : "\"\"");
-                response = restTemplate.exchange(url, HttpMethod.GET, getAuthHttpEntity(), String.class);
+                response = restTemplate.exchange(usernameUrl, HttpMethod.GET, getAuthHttpEntity(), String.class);
+                capabilities.put(USER_SEARCH_PARAM_CAPABILITY, "username");
             } catch (Exception ex) {
                 LogUtil.error(ex);
                 return new ArrayList<>();
@@ -136,6 +484,57 @@ public abstract class JiraAbstractClient extends BaseClient {
         return (List<JiraUser>) getResultForList(JiraUser.class, response);
     }
 
+    /**
+     * 按客户端和接口地址记录支持的接口，同一 Jira 的不同账号共用
+     */
+    protected CapabilityProfile getCapabilities() {
+        return CapabilityProfile.of(getClass().getName(), getBaseUrl());
+    }
+
+
+    /**
+     * 分页查询所有用户，用于加载本地用户目录
+     */
+    public List<JiraUser> getUsers(int startAt, int maxResults) {
+        if (getCapabilities().isSupported(USERS_SEARCH_CAPABILITY)) {
+            try {
+                ResponseEntity<String> response = restTemplate.exchange(getBaseUrl() + "/users/search?startAt={1}&maxResults={2}",
+                        HttpMethod.GET, getAuthHttpEntity(), String.class, startAt, maxResults);
+                return (List<JiraUser>) getResultForList(JiraUser.class, response);
+            } catch (HttpClientErrorException e) {
+                if (e.getRawStatusCode() != 404) {
+                    LogUtil.error(e.getMessage(), e);
+                    MSPluginException.throwException(e.getMessage());
+                }
+                getCapabilities().setSupported(USERS_SEARCH_CAPABILITY, false);
+            }
+        }
+        // Jira Server 用 . 匹配所有用户
+        ResponseEntity<String> response = null;
+        try {
+            response = restTemplate.exchange(getBaseUrl() + "/user/search?username=.&startAt={1}&maxResults={2}",
+                    HttpMethod.GET, getAuthHttpEntity(), String.class, startAt, maxResults);
+        } catch (Exception e) {
+            LogUtil.error(e.getMessage(), e);
+            MSPluginException.throwException(e.getMessage());
+        }
+        return (List<JiraUser>) getResultForList(JiraUser.class, response);
+    }
+
+    /**
+     * 分页查询项目中可以分配的用户，用于加载本地用户目录
+     */
+    public List<JiraUser> getAssignableUsers(String projectKey, int startAt, int maxResults) {
+        ResponseEntity<String> response = null;
+        try {
+            response = restTemplate.exchange(getBaseUrl() + "/user/assignable/search?project={1}&startAt={2}&maxResults={3}",
+                    HttpMethod.GET, getAuthHttpEntity(), String.class, projectKey, startAt, maxResults);
+        } catch (Exception e) {
+            LogUtil.error(e.getMessage(), e);
+            MSPluginException.throwException(e.getMessage());
+        }
+        return (List<JiraUser>) getResultForList(JiraUser.class, response);
+    }
 
     public List getDemands(String projectKey, String issueType, int startAt, int maxResults) {
         String jql = getBaseUrl() + "/search?jql=project=" + projectKey + "+AND+issuetype=" + issueType
@@ -207,6 +606,71 @@ public abstract class JiraAbstractClient extends BaseClient {
         return jiraEpics;
     }
 
+    /**
+     * 查询项目的所有看板
+     *
+     * @return 没有 agile 接口时返回 null
+     */
+    public List<JiraBoard> getBoards(String projectKey) {
+        CapabilityProfile capabilities = getCapabilities();
+        if (!capabilities.isSupported(AGILE_CAPABILITY)) {
+            return null;
+        }
+        try {
+            return getAgilePages("/board?projectKeyOrId={1}", JiraBoard.class, projectKey);
+        } catch (HttpClientErrorException e) {
+            if (e.getRawStatusCode() == 404) {
+                capabilities.setSupported(AGILE_CAPABILITY, false);
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 查询看板中进行中和未开始的迭代
+     */
+    public List<JiraSprint> getBoardSprints(JiraBoard board) {
+        List<JiraSprint> sprints = getAgilePages("/board/{1}/sprint?state=active,future", JiraSprint.class, board.getId());
+        sprints.forEach(sprint -> sprint.setBoardName(board.getName()));
+        return sprints;
+    }
+
+    /**
+     * 查询看板中未完成的史诗
+     */
+    public List<JiraEpic> getBoardEpics(JiraBoard board) {
+        List<JiraEpic> epics = getAgilePages("/board/{1}/epic?done=false", JiraEpic.class, board.getId());
+        epics.forEach(epic -> {
+            // 团队管理的项目没有史诗名称，使用概要
+            if (StringUtils.isBlank(epic.getName())) {
+                epic.setName(epic.getSummary());
+            }
+        });
+        return epics;
+    }
+
+    private <T> List<T> getAgilePages(String path, Class<T> clazz, Object uriVariable) {
+        List<T> result = new ArrayList<>();
+        int startAt = 0;
+        while (true) {
+            String url = ENDPOINT + AGILE_V1_BASE_URL + path + (path.contains("?") ? "&" : "?")
+                    + "startAt=" + startAt + "&maxResults=" + AGILE_PAGE_SIZE;
+            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.GET, getAuthHttpEntity(), String.class, uriVariable);
+            JiraAgilePageResponse page = (JiraAgilePageResponse) getResultForObject(JiraAgilePageResponse.class, response);
+            if (CollectionUtils.isEmpty(page.getValues())) {
+                break;
+            }
+            List<T> values = JSON.parseArray(JSON.toJSONString(page.getValues()), clazz);
+            result.addAll(values);
+            startAt += values.size();
+            if (Boolean.TRUE.equals(page.getIsLast()) || (page.getTotal() != null && startAt >= page.getTotal())) {
+                break;
+            }
+        }
+        return result;
+    }
+
     public String getGreenhopperV1BaseUrl() {
         return ENDPOINT + GREENHOPPER_V1_BASE_URL;
     }
@@ -312,29 +776,24 @@ public abstract class JiraAbstractClient extends BaseClient {
         return getBaseUrl() + path;
     }
 
-    public void setConfig(JiraConfig config) {
-        if (config == null) {
-            MSPluginException.throwException("config is null");
-        }
-        String url = config.getUrl();
-
-        if (StringUtils.isNotBlank(url) && url.endsWith("/")) {
-            url = url.substring(0, url.length() - 1);
-        }
-        ENDPOINT = url;
-        USER_NAME = config.getAccount();
-        PASSWD = config.getPassword();
-        TOKEN = config.getToken();
-        AUTH_TYPE = config.getAuthType();
-    }
-
     public JiraIssueListResponse getProjectIssues(Integer startAt, Integer maxResults, String projectKey, String issueType) {
         return getProjectIssues(startAt, maxResults, projectKey, issueType, null);
     }
 
     public JiraIssueListResponse getProjectIssues(Integer startAt, Integer maxResults, String projectKey, String issueType, String fields) {
+        return getProjectIssues(startAt, maxResults, projectKey, issueType, fields, null, false);
+    }
+
+    /**
+     * 按 startAt 翻页，查询过程中有缺陷被删除时后面的页会偏移，需要完整结果时使用 getProjectIssuesAfterKey
+     *
+     * @param createTime 不为空时只查询该时间之后创建的缺陷，pre 为 true 时查询之前创建的
+     */
+    public JiraIssueListResponse getProjectIssues(Integer startAt, Integer maxResults, String projectKey, String issueType, String fields,
+                                                  Long createTime, boolean pre) {
         ResponseEntity<String> responseEntity;
-        String url = getBaseUrl() + "/search?startAt={1}&maxResults={2}&jql=project={3}+AND+issuetype={4}";
+        String url = getBaseUrl() + "/search?startAt={1}&maxResults={2}&jql=project={3}+AND+issuetype={4}" + getCreatedJql(createTime, pre)
+                + "+ORDER+BY+key+ASC";
         if (StringUtils.isNotBlank(fields)) {
             url = url + "&fields=" + fields;
         }
@@ -343,6 +802,73 @@ public abstract class JiraAbstractClient extends BaseClient {
         return  (JiraIssueListResponse)getResultForObject(JiraIssueListResponse.class, responseEntity);
     }
 
+    /**
+     * 查询最近更新的缺陷，按 key 升序，用上一页最后一个 key 翻页
+     * 不使用 startAt 翻页，同步过程中有缺陷被更新也不会漏掉
+     *
+     * @param updatedMinutes 最近多少分钟内更新，使用相对时间，不受 jira 用户时区的影响
+     * @param afterKey       上一页最后一个缺陷的 key，为空则从第一个开始
+     * @param toKey          只查询该 key 及之前的缺陷，为空则不限制
+     * @param fields         返回的字段，为空则返回全部
+     */
+    public JiraIssueListResponse getProjectIssuesUpdatedWithin(Integer maxResults, String projectKey, String issueType,
+                                                               long updatedMinutes, String afterKey, String toKey, String fields,
+                                                               Long createTime, boolean pre) {
+        return getProjectIssuesAfterKey(maxResults, projectKey, issueType, "+AND+updated>=-" + updatedMinutes + "m" + getCreatedJql(createTime, pre),
+                afterKey, toKey, fields);
+    }
+
+    /**
+     * 按 key 升序查询项目的缺陷，用上一页最后一个 key 翻页
+     * 不使用 startAt 翻页，同步过程中有缺陷被删除也不会漏掉后面的缺陷
+     *
+     * @param afterKey 上一页最后一个缺陷的 key，为空则从第一个开始
+     * @param toKey    只查询该 key 及之前的缺陷，为空则不限制
+     * @param fields   返回的字段，为空则返回全部
+     */
+    public JiraIssueListResponse getProjectIssuesAfterKey(Integer maxResults, String projectKey, String issueType,
+                                                          String afterKey, String toKey, String fields, Long createTime, boolean pre) {
+        return getProjectIssuesAfterKey(maxResults, projectKey, issueType, getCreatedJql(createTime, pre), afterKey, toKey, fields);
+    }
+
+    /**
+     * key 的范围用作分页边界，对应的缺陷可能已删除或不存在，不校验 jql 中的 key
+     *
+     * @param conditions 额外的 jql 条件
+     */
+    private JiraIssueListResponse getProjectIssuesAfterKey(Integer maxResults, String projectKey, String issueType,
+                                                           String conditions, String afterKey, String toKey, String fields) {
+        ResponseEntity<String> responseEntity;
+        List<Object> uriVariables = new ArrayList<>(Arrays.asList(maxResults, projectKey, issueType));
+        String url = getBaseUrl() + "/search?startAt=0&maxResults={1}&validateQuery=false&jql=project={2}+AND+issuetype={3}" + conditions;
+        if (StringUtils.isNotBlank(afterKey)) {
+            url = url + "+AND+issuekey>{" + (uriVariables.size() + 1) + "}";
+            uriVariables.add(afterKey);
+        }
+        if (StringUtils.isNotBlank(toKey)) {
+            url = url + "+AND+issuekey<={" + (uriVariables.size() + 1) + "}";
+            uriVariables.add(toKey);
+        }
+        url = url + "+ORDER+BY+key+ASC";
+        if (StringUtils.isNotBlank(fields)) {
+            url = url + "&fields=" + fields;
+        }
+        responseEntity = restTemplate.exchange(url,
+                HttpMethod.GET, getAuthHttpEntity(), String.class, uriVariables.toArray());
+        return (JiraIssueListResponse) getResultForObject(JiraIssueListResponse.class, responseEntity);
+    }
+
+    /**
+     * @return 项目中 key 最大的缺陷的 key，没有缺陷时返回 null
+     */
+    public String getProjectLastIssueKey(String projectKey, String issueType) {
+        String url = getBaseUrl() + "/search?startAt=0&maxResults=1&fields=created&jql=project={1}+AND+issuetype={2}+ORDER+BY+key+DESC";
+        ResponseEntity<String> responseEntity = restTemplate.exchange(url,
+                HttpMethod.GET, getAuthHttpEntity(), String.class, projectKey, issueType);
+        List<JiraIssue> issues = ((JiraIssueListResponse) getResultForObject(JiraIssueListResponse.class, responseEntity)).getIssues();
+        return CollectionUtils.isEmpty(issues) ? null : issues.get(0).getKey();
+    }
+
     public void getAttachmentContent(String url, Consumer<InputStream> inputStreamHandler) {
         RequestCallback requestCallback = request -> {
             request.getHeaders().addAll(getAuthHeader());
@@ -357,9 +883,32 @@ public abstract class JiraAbstractClient extends BaseClient {
     }
 
     public JiraIssueListResponse getProjectIssuesAttachment(Integer startAt, Integer maxResults, String projectKey, String issueType) {
-        return getProjectIssues(startAt, maxResults, projectKey, issueType, "attachment");
+        return getProjectIssuesAttachment(startAt, maxResults, projectKey, issueType, null, false);
+    }
 
+    public JiraIssueListResponse getProjectIssuesAttachment(Integer startAt, Integer maxResults, String projectKey, String issueType,
+                                                            Long createTime, boolean pre) {
+        return getProjectIssues(startAt, maxResults, projectKey, issueType, "attachment", createTime, pre);
     }
+
+    /**
+     * 按创建时间过滤的 jql 条件，使用相对时间，不受 jira 用户时区的影响
+     * jql 的相对时间只精确到分钟，且按 jira 服务器的时间计算，与插件所在服务器的时间可能不一致
+     * 这里向范围外放宽 SYNC_WATERMARK_OVERLAP，查询结果需要再按创建时间精确过滤
+     */
+    protected String getCreatedJql(Long createTime, boolean pre) {
+        if (createTime == null) {
+            return StringUtils.EMPTY;
+        }
+        long minutes = (System.currentTimeMillis() - createTime) / 60000;
+        long overlapMinutes = AbstractPlatform.SYNC_WATERMARK_OVERLAP / 60000;
+        if (pre) {
+            minutes -= 1 + overlapMinutes;
+            return minutes > 0 ? "+AND+created<=-" + minutes + "m" : StringUtils.EMPTY;
+        }
+        return "+AND+created>=-" + Math.max(minutes + 1 + overlapMinutes, 1) + "m";
+    }
+
     public void setTransitions(String jiraKey, JiraTransitionsResponse.Transitions transitions) {
         LogUtil.info("setTransitions: " + transitions);
         Map jsonObject = new LinkedHashMap();
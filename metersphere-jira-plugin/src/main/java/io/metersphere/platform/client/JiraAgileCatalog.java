@@ -0,0 +1,139 @@
+package io.metersphere.platform.client;
+
+import io.metersphere.platform.cache.RefreshableCache;
+import io.metersphere.platform.domain.JiraBoard;
+import io.metersphere.platform.domain.JiraEpic;
+import io.metersphere.platform.domain.JiraSprint;
+import io.metersphere.platform.utils.PrefixIndex;
+import io.metersphere.plugin.utils.LogUtil;
+
+import java.util.*;
+
+/**
+ * 项目的迭代和史诗目录，在后台按看板分页加载，按名称在本地搜索
+ * 超过 REFRESH_INTERVAL 后在后台逐个看板重新加载，某个看板加载失败时继续使用该看板的旧数据
+ * 没有 agile 接口或项目没有看板时不可用，调用方使用原来的接口查询
+ * 只加载进行中和未开始的迭代，已完成的迭代本地搜索不到，调用方使用原来的接口查询
+ */
+public class JiraAgileCatalog {
+
+    public static final long REFRESH_INTERVAL = 10 * 60 * 1000L;
+    /**
+     * 加载失败后，间隔一段时间再重试
+     */
+    public static final long RETRY_INTERVAL = 5 * 60 * 1000L;
+    /**
+     * 长时间没有重新加载成功时不再使用旧数据
+     */
+    public static final long EXPIRE_INTERVAL = 24 * 60 * 60 * 1000L;
+
+    private final JiraAbstractClient client;
+    private final String projectKey;
+    /**
+     * 只缓存当前项目的目录，key 为项目 key
+     */
+    private final RefreshableCache<String, Catalog> catalog = new RefreshableCache<>(1, REFRESH_INTERVAL, EXPIRE_INTERVAL);
+
+    public JiraAgileCatalog(JiraAbstractClient client, String projectKey) {
+        this.client = client;
+        this.projectKey = projectKey;
+        catalog.setRetryAfterFailure(RETRY_INTERVAL);
+    }
+
+    /**
+     * @param query 为空时返回前 limit 个迭代
+     * @return 目录不可用或没有匹配的迭代时返回 null
+     */
+    public List<JiraSprint> searchSprints(String query, int limit) {
+        Catalog current = getCatalog();
+        if (current == null) {
+            return null;
+        }
+        List<JiraSprint> sprints = current.sprintIndex.search(query, limit);
+        return sprints.isEmpty() ? null : sprints;
+    }
+
+    /**
+     * 目录还没有加载时在调用线程中加载，原来的接口最多返回 1000 个史诗，不能代替
+     * 加载失败时抛出异常
+     *
+     * @return 所有未完成的史诗，项目没有看板时返回 null
+     */
+    public List<JiraEpic> getEpics() {
+        Catalog current = catalog.get(projectKey, this::loadCatalog);
+        if (current.boards.isEmpty()) {
+            return null;
+        }
+        return current.epics;
+    }
+
+    /**
+     * @return 还没有加载完成时返回 null，在后台加载
+     */
+    private Catalog getCatalog() {
+        return catalog.getNow(projectKey, this::loadCatalog);
+    }
+
+    /**
+     * 重新加载时，加载失败的看板使用旧数据
+     */
+    private Catalog loadCatalog(String key) {
+        return load(catalog.getIfPresent(key));
+    }
+
+    private Catalog load(Catalog previous) {
+        List<JiraBoard> boards = client.getBoards(projectKey);
+        if (boards == null || boards.isEmpty()) {
+            // 没有 agile 接口或没有看板，目录为空，超过 REFRESH_INTERVAL 后再检查
+            return new Catalog(Collections.emptyMap());
+        }
+        Map<Integer, BoardData> boardDataMap = new LinkedHashMap<>();
+        for (JiraBoard board : boards) {
+            BoardData boardData;
+            try {
+                boardData = new BoardData(
+                        // kanban 看板没有迭代
+                        "scrum".equals(board.getType()) ? client.getBoardSprints(board) : Collections.emptyList(),
+                        client.getBoardEpics(board));
+            } catch (Exception e) {
+                LogUtil.error(e);
+                boardData = previous == null ? null : previous.boards.get(board.getId());
+            }
+            if (boardData != null) {
+                boardDataMap.put(board.getId(), boardData);
+            }
+        }
+        return new Catalog(boardDataMap);
+    }
+
+    private static class BoardData {
+        private final List<JiraSprint> sprints;
+        private final List<JiraEpic> epics;
+
+        private BoardData(List<JiraSprint> sprints, List<JiraEpic> epics) {
+            this.sprints = sprints;
+            this.epics = epics;
+        }
+    }
+
+    private static class Catalog {
+        private final Map<Integer, BoardData> boards;
+        private final PrefixIndex<JiraSprint> sprintIndex = new PrefixIndex<>();
+        private final List<JiraEpic> epics = new ArrayList<>();
+
+        private Catalog(Map<Integer, BoardData> boards) {
+            this.boards = boards;
+            // 多个看板可能包含相同的迭代和史诗
+            Set<Integer> sprintIds = new HashSet<>();
+            Set<String> epicKeys = new HashSet<>();
+            boards.values().forEach(boardData -> {
+                boardData.sprints.stream()
+                        .filter(sprint -> sprint.getId() != null && sprintIds.add(sprint.getId()))
+                        .forEach(sprint -> sprintIndex.add(sprint, sprint.getName(), sprint.getBoardName()));
+                boardData.epics.stream()
+                        .filter(epic -> epic.getKey() != null && epicKeys.add(epic.getKey()))
+                        .forEach(epics::add);
+            });
+        }
+    }
+}
@@ -1,7 +1,13 @@
 package io.metersphere.platform.client;
 
+import io.metersphere.platform.domain.JiraConfig;
+
 public class JiraClientV2 extends JiraAbstractClient {
     {
         PREFIX = "/rest/api/2";
     }
+
+    public JiraClientV2(JiraConfig config) {
+        super(config);
+    }
 }
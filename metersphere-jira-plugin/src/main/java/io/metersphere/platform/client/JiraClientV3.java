@@ -1,7 +1,13 @@
 package io.metersphere.platform.client;
 
+import io.metersphere.platform.domain.JiraConfig;
+
 public class JiraClientV3 extends JiraAbstractClient {
     {
         PREFIX = "/rest/api/3";
     }
+
+    public JiraClientV3(JiraConfig config) {
+        super(config);
+    }
 }
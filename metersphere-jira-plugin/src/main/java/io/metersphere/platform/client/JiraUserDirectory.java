@@ -0,0 +1,119 @@
+package io.metersphere.platform.client;
+
+import io.metersphere.platform.cache.RefreshableCache;
+import io.metersphere.platform.domain.JiraUser;
+import io.metersphere.platform.utils.PrefixIndex;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.util.CollectionUtils;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+/**
+ * 本地用户目录，在后台分页加载用户，按显示名、账号和邮箱的前缀在本地搜索
+ * 选择用户的下拉框每次输入都会查询，本地能查到时不再请求 Jira
+ * 超过 REFRESH_INTERVAL 后在后台重新加载，加载完成前继续使用旧数据
+ */
+public class JiraUserDirectory {
+
+    public static final int PAGE_SIZE = 200;
+    /**
+     * 最多加载的用户数，超过后未加载的用户通过远程查询
+     */
+    public static final int MAX_USERS = 20000;
+    public static final int SEARCH_LIMIT = 100;
+    public static final long REFRESH_INTERVAL = 30 * 60 * 1000L;
+    /**
+     * 加载失败后，间隔一段时间再重试
+     */
+    public static final long RETRY_INTERVAL = 5 * 60 * 1000L;
+    /**
+     * 长时间没有重新加载成功时不再使用旧数据
+     */
+    public static final long EXPIRE_INTERVAL = 24 * 60 * 60 * 1000L;
+    /**
+     * 只缓存一个目录，使用固定的 key
+     */
+    private static final String DIRECTORY_KEY = "users";
+
+    private final BiFunction<Integer, Integer, List<JiraUser>> pageLoader;
+    private final RefreshableCache<String, Directory> directory = new RefreshableCache<>(1, REFRESH_INTERVAL, EXPIRE_INTERVAL);
+
+    /**
+     * @param pageLoader 按 startAt 和 maxResults 查询一页用户
+     */
+    public JiraUserDirectory(BiFunction<Integer, Integer, List<JiraUser>> pageLoader) {
+        this.pageLoader = pageLoader;
+        directory.setRetryAfterFailure(RETRY_INTERVAL);
+    }
+
+    /**
+     * @return 目录还没有加载完成，或本地没有匹配的用户时返回 null，需要远程查询
+     * 用户数超过 MAX_USERS 时目录不完整，本地匹配的用户不足 SEARCH_LIMIT 个也返回 null，没有加载的用户可能匹配
+     */
+    public List<JiraUser> search(String query) {
+        Directory current = getDirectory();
+        if (current == null) {
+            return null;
+        }
+        List<JiraUser> users = current.index.search(query, SEARCH_LIMIT);
+        if (users.isEmpty() || (current.truncated && users.size() < SEARCH_LIMIT)) {
+            return null;
+        }
+        return users;
+    }
+
+    /**
+     * 远程查询到的用户加入目录，新用户不用等到下次重新加载
+     */
+    public void addUsers(List<JiraUser> users) {
+        Directory current = getDirectory();
+        if (current != null && !CollectionUtils.isEmpty(users)) {
+            current.addAll(users);
+        }
+    }
+
+    /**
+     * @return 还没有加载完成时返回 null，在后台加载
+     */
+    private Directory getDirectory() {
+        return directory.getNow(DIRECTORY_KEY, k -> load());
+    }
+
+    private Directory load() {
+        Directory loaded = new Directory();
+        int startAt = 0;
+        while (startAt < MAX_USERS) {
+            List<JiraUser> users = pageLoader.apply(startAt, PAGE_SIZE);
+            if (CollectionUtils.isEmpty(users)) {
+                return loaded;
+            }
+            loaded.addAll(users);
+            // 每页实际返回的数量可能小于 PAGE_SIZE，按返回的数量翻页
+            startAt += users.size();
+        }
+        // 没有查询到空页就停止了，可能还有没有加载的用户
+        loaded.truncated = true;
+        return loaded;
+    }
+
+    private static class Directory {
+        private final PrefixIndex<JiraUser> index = new PrefixIndex<>();
+        private final Set<String> userIds = new HashSet<>();
+        private volatile boolean truncated;
+
+        private synchronized void addAll(List<JiraUser> users) {
+            for (JiraUser user : users) {
+                if (Boolean.FALSE.equals(user.getActive()) || StringUtils.equals(user.getAccountType(), "app")) {
+                    continue;
+                }
+                String userId = StringUtils.isNotBlank(user.getAccountId()) ? user.getAccountId() : user.getName();
+                if (userId != null && userIds.add(userId)) {
+                    index.add(user, user.getDisplayName(), user.getName(), user.getEmailAddress());
+                }
+            }
+        }
+    }
+}
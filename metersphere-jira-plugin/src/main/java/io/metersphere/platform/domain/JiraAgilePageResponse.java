@@ -0,0 +1,19 @@
+package io.metersphere.platform.domain;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * agile 接口分页查询的返回结果，values 按查询的类型再解析
+ */
+@Getter
+@Setter
+public class JiraAgilePageResponse {
+    private int startAt;
+    private int maxResults;
+    private Integer total;
+    private Boolean isLast;
+    private List<Object> values;
+}
@@ -0,0 +1,15 @@
+package io.metersphere.platform.domain;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class JiraBoard {
+    private Integer id;
+    private String name;
+    /**
+     * scrum 或 kanban，kanban 看板没有迭代
+     */
+    private String type;
+}
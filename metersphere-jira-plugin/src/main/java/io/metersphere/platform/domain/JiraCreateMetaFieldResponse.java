@@ -0,0 +1,21 @@
+package io.metersphere.platform.domain;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * 分页查询创建缺陷字段的返回结果
+ * Jira Server/DC 9 的字段在 values 中，Jira Cloud 的字段在 fields 中
+ */
+@Getter
+@Setter
+public class JiraCreateMetaFieldResponse {
+    private int startAt;
+    private int maxResults;
+    private Integer total;
+    private Boolean isLast;
+    private List<JiraCreateMetadataResponse.Field> values;
+    private List<JiraCreateMetadataResponse.Field> fields;
+}
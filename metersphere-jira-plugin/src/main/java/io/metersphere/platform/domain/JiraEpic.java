@@ -8,4 +8,5 @@ import lombok.Setter;
 public class JiraEpic {
     private String name;
     private String key;
+    private String summary;
 }
@@ -13,4 +13,8 @@ public class JiraIssue {
     private String self;
     private String key;
     private Map<String, Object> fields;
+    /**
+     * 查询时展开 changelog 才有
+     */
+    private Map<String, Object> changelog;
 }
@@ -12,4 +12,5 @@ public class JiraUser {
     private String displayName;
     private String emailAddress;
     private Boolean active;
+    private String accountType;
 }
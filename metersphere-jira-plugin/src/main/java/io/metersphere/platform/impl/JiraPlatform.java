@@ -3,11 +3,20 @@ package io.metersphere.platform.impl;
 
 import io.metersphere.base.domain.IssuesWithBLOBs;
 import io.metersphere.platform.api.AbstractPlatform;
+import io.metersphere.platform.cache.ContentKey;
+import io.metersphere.platform.cache.LocalCache;
+import io.metersphere.platform.cache.RefreshableCache;
+import io.metersphere.platform.client.JiraAgileCatalog;
 import io.metersphere.platform.client.JiraClientV2;
+import io.metersphere.platform.client.JiraUserDirectory;
 import io.metersphere.platform.constants.AttachmentSyncType;
 import io.metersphere.platform.constants.CustomFieldType;
 import io.metersphere.platform.domain.*;
+import io.metersphere.platform.utils.AhoCorasickMatcher;
 import io.metersphere.platform.utils.BeanUtils;
+import io.metersphere.platform.utils.ParallelPageFetcher;
+import io.metersphere.platform.utils.RichTextUtils;
+import io.metersphere.platform.utils.SyncPipeline;
 import io.metersphere.plugin.exception.MSPluginException;
 import io.metersphere.plugin.utils.JSON;
 import io.metersphere.plugin.utils.LogUtil;
@@ -15,7 +24,6 @@ import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.http.ResponseEntity;
-import org.springframework.web.client.HttpClientErrorException;
 
 import java.io.File;
 import java.io.InputStream;
@@ -29,20 +37,27 @@ import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.*;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 public class JiraPlatform extends AbstractPlatform {
 
-    protected JiraClientV2 jiraClientV2;
-
-    protected SimpleDateFormat sdfWithZone = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
-
-    protected JiraProjectConfig projectConfig;
+    /**
+     * 服务集成配置对应的客户端，创建后不再修改
+     * 项目配置、第三方模板等每次调用的状态都通过参数传递，同一实例可以被多个线程共享
+     */
+    protected final JiraClientV2 jiraClientV2;
 
-    private Set<String> jiraImageFileNames;
+    private static final ThreadLocal<SimpleDateFormat> SDF_WITH_ZONE = ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss"));
+    /**
+     * 带时区偏移解析，按创建时间过滤时与 jql 的时间一致
+     */
+    private static final ThreadLocal<SimpleDateFormat> SDF_WITH_OFFSET = ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ"));
 
     private static final String ATTACHMENT_NAME = "attachment";
     private static final String SPRINT_FIELD_NAME = "sprint";
@@ -53,23 +68,90 @@ public class JiraPlatform extends AbstractPlatform {
     private static final String REMAINING_ESTIMATE_TRACKING_FIELD_NAME = "remainingEstimate";
     private static final String USER_SEARCH_METHOD = "getUserSearchOptions";
     private static final String ASSIGNABLE_SEARCH_METHOD = "getAssignableOptions";
+    /**
+     * 同步缺陷时固定需要的字段，其余字段按模板中的自定义字段查询
+     */
+    private static final List<String> SYNC_BASE_FIELDS = Arrays.asList(SUMMARY_FIELD_NAME, "status", "assignee", "created", "updated",
+            DESCRIPTION_FIELD_NAME, ATTACHMENT_NAME);
+    private static final Pattern FIELD_ID_PATTERN = Pattern.compile("[\\w.-]+");
+    private static final String EPIC_LINK_FIELD_TYPE = "epic-link";
+    /**
+     * 系统字段按字段 ID 对应的类型
+     */
+    private static final Map<String, String> SYSTEM_FIELD_TYPE_MAP;
+
+    static {
+        Map<String, String> fieldTypeMap = new HashMap<>();
+        fieldTypeMap.put(SUMMARY_FIELD_NAME, CustomFieldType.INPUT.getValue());
+        fieldTypeMap.put(DESCRIPTION_FIELD_NAME, CustomFieldType.RICH_TEXT.getValue());
+        fieldTypeMap.put("components", CustomFieldType.MULTIPLE_SELECT.getValue());
+        fieldTypeMap.put("fixVersions", CustomFieldType.MULTIPLE_SELECT.getValue());
+        fieldTypeMap.put("versions", CustomFieldType.MULTIPLE_SELECT.getValue());
+        fieldTypeMap.put("priority", CustomFieldType.SELECT.getValue());
+        fieldTypeMap.put("environment", CustomFieldType.RICH_TEXT.getValue());
+        fieldTypeMap.put("labels", CustomFieldType.MULTIPLE_INPUT.getValue());
+        SYSTEM_FIELD_TYPE_MAP = Collections.unmodifiableMap(fieldTypeMap);
+    }
+
+    /**
+     * ms 创建后同步到 jira 的链接 ([http://aa.com|http://aa.com])
+     */
+    private static final Pattern JIRA_LINK_PATTERN = Pattern.compile("(\\(\\[.*?\\]\\))");
+    /**
+     * jira 的链接 [http://aa.com|http://aa.com]
+     */
+    private static final Pattern SIMPLE_JIRA_LINK_PATTERN = Pattern.compile("(\\[.*?\\])");
+    /**
+     * 富文本转换结果，key 为原文和附件内容（含代理路径）的哈希，内容不变时同步不再重复转换
+     */
+    private static final LocalCache<ContentKey, RichTextResult> RICH_TEXT_CACHE = new LocalCache<>(2000);
+    /**
+     * 客户端按地址和认证信息复用，连接池按地址共用，淘汰的客户端不持有单独的连接池
+     */
+    private static final LocalCache<List<String>, JiraClientV2> CLIENT_CACHE = new LocalCache<>(200, 30 * 60 * 1000L);
+    /**
+     * 创建缺陷的字段元数据按地址、认证信息、项目和缺陷类型缓存，创建和编辑缺陷时不用每次都下载
+     * 超过 10 分钟后台刷新，超过 2 小时重新加载，项目配置校验或提交失败时清除
+     */
+    private static final RefreshableCache<List<String>, Map<String, JiraCreateMetadataResponse.Field>> CREATE_METADATA_CACHE =
+            new RefreshableCache<>(500, 10 * 60 * 1000L, 2 * 60 * 60 * 1000L);
+    /**
+     * 第三方模板的字段按地址、服务集成的认证信息、项目和缺陷类型缓存，模板页面和同步缺陷共用
+     * 字段选项中包含用户和迭代，超过 5 分钟后台刷新
+     */
+    private static final RefreshableCache<List<String>, List<PlatformCustomFieldItemDTO>> CUSTOM_FIELD_CACHE =
+            new RefreshableCache<>(500, 5 * 60 * 1000L, 30 * 60 * 1000L);
+    /**
+     * 用户目录按地址、认证信息和项目区分，项目为空的是所有用户
+     */
+    private static final LocalCache<List<String>, JiraUserDirectory> USER_DIRECTORY_CACHE = new LocalCache<>(200);
+    /**
+     * 迭代和史诗目录按地址、认证信息和项目区分
+     */
+    private static final LocalCache<List<String>, JiraAgileCatalog> AGILE_CATALOG_CACHE = new LocalCache<>(200);
+    /**
+     * 迭代下拉框最多返回的数量，更多的迭代通过搜索查找
+     */
+    private static final int SPRINT_OPTION_LIMIT = 100;
 
     public JiraPlatform(PlatformRequest request) {
         super.key = JiraPlatformMetaInfo.KEY;
         super.request = request;
-        jiraClientV2 = new JiraClientV2();
-        setConfig();
+        jiraClientV2 = getClient(getIntegrationConfig());
     }
 
-    public JiraConfig setConfig() {
-        JiraConfig config = getIntegrationConfig();
+    @Override
+    public boolean isShareable() {
+        return true;
+    }
+
+    private JiraClientV2 getClient(JiraConfig config) {
         validateConfig(config);
-        jiraClientV2.setConfig(config);
-        return config;
+        List<String> cacheKey = Arrays.asList(config.getUrl(), config.getAuthType(), config.getAccount(), config.getPassword(), config.getToken());
+        return CLIENT_CACHE.get(cacheKey, k -> new JiraClientV2(config));
     }
 
     private void validateConfig(JiraConfig config) {
-        jiraClientV2.setConfig(config);
         if (config == null) {
             MSPluginException.throwException("jira config is null");
         }
@@ -79,10 +161,18 @@ public class JiraPlatform extends AbstractPlatform {
         return getIntegrationConfig(JiraConfig.class);
     }
 
-    public JiraConfig setUserConfig(String userPlatformInfo) {
-        JiraConfig config = getIntegrationConfig();
+    /**
+     * 获取使用个人账号认证的客户端，没有配置个人账号则使用服务集成的账号
+     */
+    public JiraClientV2 getUserClient(String userPlatformInfo) {
+        return getClient(getUserConfig(userPlatformInfo));
+    }
+
+    public JiraConfig getUserConfig(String userPlatformInfo) {
+        // 缓存的配置是共享的，复制后再设置个人账号
+        JiraConfig config = BeanUtils.copyBean(new JiraConfig(), getIntegrationConfig());
         JiraUserPlatformInfo userInfo = StringUtils.isBlank(userPlatformInfo) ? new JiraUserPlatformInfo()
-                : JSON.parseObject(userPlatformInfo, JiraUserPlatformInfo.class);
+                : parseConfig(userPlatformInfo, JiraUserPlatformInfo.class);
         if (StringUtils.isNotBlank(userInfo.getAuthType()) && StringUtils.isNotBlank(userInfo.getToken())) {
             config.setAuthType(userInfo.getAuthType());
             config.setToken(userInfo.getToken());
@@ -95,11 +185,10 @@ public class JiraPlatform extends AbstractPlatform {
             config.setPassword(userInfo.getJiraPassword());
         }
         validateConfig(config);
-        jiraClientV2.setConfig(config);
         return config;
     }
 
-    public PlatformIssuesDTO getUpdateIssue(PlatformIssuesDTO issue, JiraIssue jiraIssue) {
+    public PlatformIssuesDTO getUpdateIssue(PlatformIssuesDTO issue, JiraIssue jiraIssue, String defaultCustomFields, boolean isThirdPartTemplate) {
         try {
             if (issue == null) {
                 issue = new PlatformIssuesDTO();
@@ -120,7 +209,7 @@ public class JiraPlatform extends AbstractPlatform {
             // 先转换下desc的图片
             String description = parseJira2MsRichText(Optional.ofNullable(fields.get(DESCRIPTION_FIELD_NAME)).orElse("").toString(), fileContentMap);
             fields.put(DESCRIPTION_FIELD_NAME, description);
-            List<PlatformCustomFieldItemDTO> customFieldItems = syncIssueCustomFieldList(issue.getCustomFieldList(), jiraIssue.getFields());
+            List<PlatformCustomFieldItemDTO> customFieldItems = syncIssueCustomFieldList(issue.getCustomFieldList(), jiraIssue.getFields(), isThirdPartTemplate);
 
             parseSpecialCustomField(customFieldItems, fields);
 
@@ -142,8 +231,8 @@ public class JiraPlatform extends AbstractPlatform {
             issue.setPlatform(key);
             issue.setCustomFields(JSON.toJSONString(customFieldItems));
             try {
-                issue.setCreateTime(sdfWithZone.parse((String) fields.get("created")).getTime());
-                issue.setUpdateTime(sdfWithZone.parse((String) fields.get("updated")).getTime());
+                issue.setCreateTime(SDF_WITH_ZONE.get().parse((String) fields.get("created")).getTime());
+                issue.setUpdateTime(SDF_WITH_ZONE.get().parse((String) fields.get("updated")).getTime());
             } catch (Exception e) {
                 LogUtil.error(e);
             }
@@ -271,22 +360,33 @@ public class JiraPlatform extends AbstractPlatform {
         }
     }
 
+    /**
+     * 将 jira 富文本中引用附件的行替换成 ms 的图片或附件链接
+     * 原文和附件不变时直接使用缓存的结果，并移除当时用到的附件
+     *
+     * @param text           富文本
+     * @param fileContentMap 附件名和替换内容，替换后移除，同一附件只替换一次
+     * @return
+     */
     private String parseJira2MsRichText(String text, Map<String, String> fileContentMap) {
         if (StringUtils.isBlank(text)) {
             return text;
         }
 
-        text = text.replaceAll("!image", "\n!image");
-        String[] splits = text.split("\\n");
-        for (int j = 0; j < splits.length; j++) {
-            String splitStr = splits[j];
-            if (StringUtils.isNotEmpty(splitStr)) {
-                List<String> keys = fileContentMap.keySet().stream().filter(key -> splitStr.contains(key)).collect(Collectors.toList());
-                if (CollectionUtils.isNotEmpty(keys)) {
-                    text = text.replace(splitStr, fileContentMap.get(keys.get(0)));
-                    fileContentMap.remove(keys.get(0));
-                }
-            }
+        // 附件按遍历顺序参与计算，匹配时取遍历顺序中的第一个附件
+        ContentKey.Hasher hasher = ContentKey.hasher().put(text);
+        fileContentMap.forEach((fileName, content) -> hasher.put(fileName).put(content));
+        ContentKey cacheKey = hasher.build();
+        RichTextResult cached = RICH_TEXT_CACHE.get(cacheKey);
+        if (cached != null) {
+            fileContentMap.keySet().removeAll(cached.usedFileNames);
+            return cached.text;
+        }
+
+        Set<String> usedFileNames = new HashSet<>(fileContentMap.keySet());
+        text = text.replace("!image", "\n!image");
+        if (!fileContentMap.isEmpty()) {
+            text = replaceAttachmentLines(text, fileContentMap, new AhoCorasickMatcher(fileContentMap.keySet()));
         }
 
         // 这个 parse 顺序不能调换
@@ -296,8 +396,39 @@ public class JiraPlatform extends AbstractPlatform {
         } catch (Exception e) {
             LogUtil.error(e);
         }
+        usedFileNames.removeAll(fileContentMap.keySet());
+        RICH_TEXT_CACHE.put(cacheKey, new RichTextResult(text, usedFileNames));
         return text;
     }
+
+    /**
+     * 包含附件名的行替换成第一个匹配附件的内容，该行内容在全文中出现的地方都替换
+     * 附件名只在构建 attachmentMatcher 时扫描一次，每行只扫描一次
+     */
+    private String replaceAttachmentLines(String text, Map<String, String> fileContentMap, AhoCorasickMatcher attachmentMatcher) {
+        List<String> fileNames = attachmentMatcher.getKeywords();
+        Map<String, String> lineContentMap = new LinkedHashMap<>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            if (end < 0) {
+                end = text.length();
+            }
+            if (end > start) {
+                BitSet matched = attachmentMatcher.match(text, start, end);
+                for (int i = matched.nextSetBit(0); i >= 0; i = matched.nextSetBit(i + 1)) {
+                    if (fileContentMap.containsKey(fileNames.get(i))) {
+                        // 同一附件只替换一次，重复的行按第一次替换
+                        lineContentMap.putIfAbsent(text.substring(start, end), fileContentMap.remove(fileNames.get(i)));
+                        break;
+                    }
+                }
+            }
+            start = end + 1;
+        }
+        return RichTextUtils.replaceAll(text, lineContentMap);
+    }
+
     /**
      * 这个格式是 ms 创建后同步到 jira 的
      * [GGG]([http://aa.com|http://aa.com]) -> [GGG](http://aa.com)
@@ -305,17 +436,16 @@ public class JiraPlatform extends AbstractPlatform {
      * @return
      */
     private String parseJiraLink2MsLink(String input) {
-        String pattern = "(\\(\\[.*?\\]\\))";
-        Matcher matcher = Pattern.compile(pattern).matcher(input);
+        Map<String, String> replacements = new LinkedHashMap<>();
+        Matcher matcher = JIRA_LINK_PATTERN.matcher(input);
         while (matcher.find()) {
             String group = matcher.group(1);
             if (StringUtils.isNotEmpty(group) && group.startsWith("([http")) {
                 String[] split = group.split("\\|");
-                String msFormat = split[0].replaceFirst("\\[", "") + ")";
-                input = input.replace(group, msFormat);
+                replacements.putIfAbsent(group, StringUtils.replaceOnce(split[0], "[", "") + ")");
             }
         }
-        return input;
+        return RichTextUtils.replaceAll(input, replacements);
     }
 
     /**
@@ -325,18 +455,17 @@ public class JiraPlatform extends AbstractPlatform {
      * @return
      */
     private String parseSimpleJiraLink2MsLink(String input) {
-        String pattern = "(\\[.*?\\])";
-        Matcher matcher = Pattern.compile(pattern).matcher(input);
+        Map<String, String> replacements = new LinkedHashMap<>();
+        Matcher matcher = SIMPLE_JIRA_LINK_PATTERN.matcher(input);
         while (matcher.find()) {
             String group = matcher.group(1);
             if (StringUtils.isNotEmpty(group) && group.startsWith("[http")) {
                 String[] split = group.split("\\|");
-                String msFormat = split[0].replaceFirst("\\[", "");
-                msFormat = "[" + msFormat + "]" + "(" + msFormat + ")";
-                input = input.replace(group, msFormat);
+                String msFormat = StringUtils.replaceOnce(split[0], "[", "");
+                replacements.putIfAbsent(group, "[" + msFormat + "]" + "(" + msFormat + ")");
             }
         }
-        return input;
+        return RichTextUtils.replaceAll(input, replacements);
     }
 
 
@@ -378,8 +507,8 @@ public class JiraPlatform extends AbstractPlatform {
     @Override
     public List<DemandDTO> getDemands(String projectConfigStr) {
         List<DemandDTO> list = new ArrayList<>();
-        projectConfig = getProjectConfig(projectConfigStr);
-        validateStoryType();
+        JiraProjectConfig projectConfig = getProjectConfig(projectConfigStr);
+        validateStoryType(projectConfig);
 
         int maxResults = 50, startAt = 0;
         List demands;
@@ -406,17 +535,16 @@ public class JiraPlatform extends AbstractPlatform {
         if (StringUtils.isBlank(configStr)) {
             MSPluginException.throwException("请在项目中添加项目配置！");
         }
-        JiraProjectConfig projectConfig = JSON.parseObject(configStr, JiraProjectConfig.class);
-        return projectConfig;
+        return parseConfig(configStr, JiraProjectConfig.class);
     }
 
-    public void validateStoryType() {
+    public void validateStoryType(JiraProjectConfig projectConfig) {
         if (StringUtils.isBlank(projectConfig.getJiraStoryTypeId())) {
             MSPluginException.throwException("请在项目中配置 Jira 需求类型！");
         }
     }
 
-    public void validateIssueType() {
+    public void validateIssueType(JiraProjectConfig projectConfig) {
         if (StringUtils.isBlank(projectConfig.getJiraIssueTypeId())) {
             MSPluginException.throwException("请在项目中配置 Jira 缺陷类型！");
         }
@@ -439,7 +567,13 @@ public class JiraPlatform extends AbstractPlatform {
     }
 
     private List getAssignableOptions(String jiraKey, String query) {
-        List<JiraUser> userOptions = jiraClientV2.assignableUserSearch(jiraKey, query);
+        JiraUserDirectory directory = getUserDirectory(jiraKey);
+        List<JiraUser> userOptions = directory.search(query);
+        if (userOptions == null) {
+            userOptions = singleFlight("assignableUserSearch",
+                    () -> jiraClientV2.assignableUserSearch(jiraKey, query), jiraKey, query);
+            directory.addUsers(userOptions);
+        }
         return handleOptions(userOptions);
     }
 
@@ -448,46 +582,86 @@ public class JiraPlatform extends AbstractPlatform {
     }
 
     private List getUserSearchOptions(String query) {
-        List<JiraUser> reportOptions = jiraClientV2.allUserSearch(query);
+        JiraUserDirectory directory = getUserDirectory(null);
+        List<JiraUser> reportOptions = directory.search(query);
+        if (reportOptions == null) {
+            reportOptions = singleFlight("allUserSearch", () -> jiraClientV2.allUserSearch(query), query);
+            directory.addUsers(reportOptions);
+        }
         return handleOptions(reportOptions);
     }
 
+    /**
+     * @param jiraKey 为空时返回所有用户的目录，否则返回项目中可分配用户的目录
+     */
+    private JiraUserDirectory getUserDirectory(String jiraKey) {
+        JiraConfig config = getIntegrationConfig();
+        List<String> cacheKey = Arrays.asList(config.getUrl(), config.getAuthType(), config.getAccount(),
+                config.getPassword(), config.getToken(), jiraKey);
+        JiraClientV2 client = jiraClientV2;
+        return USER_DIRECTORY_CACHE.get(cacheKey, k -> new JiraUserDirectory(jiraKey == null ? client::getUsers
+                : (startAt, maxResults) -> client.getAssignableUsers(jiraKey, startAt, maxResults)));
+    }
+
     /**
      * 由 getFormOptions 反射调用
      *
      * @return
      */
     public List<SelectOption> getIssueTypes(GetOptionRequest request) {
-        JiraProjectConfig projectConfig = getProjectConfig(request.getProjectConfig());
-        return jiraClientV2.getIssueType(projectConfig.getJiraKey())
-                .stream()
+        String jiraKey = getProjectConfig(request.getProjectConfig()).getJiraKey();
+        List<JiraIssueType> issueTypes = singleFlight("getIssueType", () -> jiraClientV2.getIssueType(jiraKey), jiraKey);
+        return issueTypes.stream()
                 .map(item -> new SelectOption(item.getName(), item.getId()))
                 .collect(Collectors.toList());
     }
 
     public List<SelectOption> getSprintOptions(GetOptionRequest request) {
-        return jiraClientV2.getSprint(request.getQuery())
-                .stream()
+        String query = request.getQuery();
+        String jiraKey = StringUtils.isBlank(request.getProjectConfig()) ? null : getProjectConfig(request.getProjectConfig()).getJiraKey();
+        return getSprintOptions(jiraKey, query);
+    }
+
+    private List<SelectOption> getSprintOptions(String jiraKey, String query) {
+        List<JiraSprint> sprints = StringUtils.isBlank(jiraKey) ? null : getAgileCatalog(jiraKey).searchSprints(query, SPRINT_OPTION_LIMIT);
+        if (sprints == null) {
+            // 目录还没有加载完成或没有 agile 接口，使用 greenhopper 接口查询
+            sprints = singleFlight("getSprint", () -> jiraClientV2.getSprint(query), query);
+        }
+        return sprints.stream()
                 .map(sprint -> new SelectOption(StringUtils.join(sprint.getName(), " (", sprint.getBoardName(), ")"), sprint.getId().toString()))
                 .collect(Collectors.toList());
     }
 
+    private JiraAgileCatalog getAgileCatalog(String jiraKey) {
+        JiraConfig config = getIntegrationConfig();
+        List<String> cacheKey = Arrays.asList(config.getUrl(), config.getAuthType(), config.getAccount(),
+                config.getPassword(), config.getToken(), jiraKey);
+        JiraClientV2 client = jiraClientV2;
+        return AGILE_CATALOG_CACHE.get(cacheKey, k -> new JiraAgileCatalog(client, jiraKey));
+    }
+
     @Override
     public IssuesWithBLOBs addIssue(PlatformIssuesUpdateRequest request) {
-        jiraImageFileNames = new HashSet<>();
-        setUserConfig(request.getUserPlatformUserConfig());
-        projectConfig = getProjectConfig(request.getProjectConfig());
-        this.isThirdPartTemplate = projectConfig.isThirdPartTemplate();
+        JiraClientV2 client = getUserClient(request.getUserPlatformUserConfig());
+        JiraProjectConfig projectConfig = getProjectConfig(request.getProjectConfig());
         validateProjectKey(projectConfig.getJiraKey());
-        validateIssueType();
+        validateIssueType(projectConfig);
 
-        Map addJiraIssueParam = buildUpdateParam(request, projectConfig.getJiraIssueTypeId(), projectConfig.getJiraKey());
-        JiraAddIssueResponse result = jiraClientV2.addIssue(JSON.toJSONString(addJiraIssueParam));
-        JiraIssue jiraIssue = jiraClientV2.getIssues(result.getId());
+        Map addJiraIssueParam = buildUpdateParam(request, projectConfig, client, new HashSet<>());
+        JiraAddIssueResponse result;
+        try {
+            result = client.addIssue(JSON.toJSONString(addJiraIssueParam));
+        } catch (RuntimeException e) {
+            // 可能是字段配置已修改，下次使用最新的元数据
+            invalidateCreateMetadata(client, projectConfig);
+            throw e;
+        }
+        JiraIssue jiraIssue = client.getIssues(result.getId());
 
         // 上传富文本中的图片作为附件
         List<File> imageFiles = getImageFiles(request);
-        imageFiles.forEach(img -> jiraClientV2.uploadAttachment(result.getKey(), img));
+        imageFiles.forEach(img -> client.uploadAttachment(result.getKey(), img));
 
         String status = getStatus(jiraIssue.getFields());
         request.setPlatformStatus(status);
@@ -518,15 +692,53 @@ public class JiraPlatform extends AbstractPlatform {
         return files;
     }
 
+    /**
+     * 缓存的元数据是共享的，返回只读的 Map
+     */
+    private Map<String, JiraCreateMetadataResponse.Field> getCreateMetadata(JiraClientV2 client, JiraProjectConfig projectConfig) {
+        String jiraKey = projectConfig.getJiraKey();
+        String issueTypeId = projectConfig.getJiraIssueTypeId();
+        return CREATE_METADATA_CACHE.get(getCreateMetadataKey(client, projectConfig),
+                k -> Collections.unmodifiableMap(client.getCreateMetadata(jiraKey, issueTypeId)));
+    }
+
+    /**
+     * Jira 上修改了字段配置后，清除缓存重新加载
+     */
+    private void invalidateCreateMetadata(JiraClientV2 client, JiraProjectConfig projectConfig) {
+        CREATE_METADATA_CACHE.invalidate(getCreateMetadataKey(client, projectConfig));
+        // 模板字段使用服务集成的账号加载，个人账号提交失败时也一起清除
+        List<String> customFieldKey = getCustomFieldKey(projectConfig);
+        CREATE_METADATA_CACHE.invalidate(customFieldKey);
+        CUSTOM_FIELD_CACHE.invalidate(customFieldKey);
+    }
+
+    /**
+     * 模板字段使用服务集成的客户端加载，与其元数据的 key 相同
+     */
+    private List<String> getCustomFieldKey(JiraProjectConfig projectConfig) {
+        return getCreateMetadataKey(jiraClientV2, projectConfig);
+    }
+
+    /**
+     * 个人账号和服务集成的账号能看到的字段可能不同，key 中包含客户端的认证信息
+     */
+    private List<String> getCreateMetadataKey(JiraClientV2 client, JiraProjectConfig projectConfig) {
+        List<String> cacheKey = new ArrayList<>(client.getCredentialKey());
+        cacheKey.add(projectConfig.getJiraKey());
+        cacheKey.add(projectConfig.getJiraIssueTypeId());
+        return cacheKey;
+    }
+
     /**
      * 参数比较特殊，需要特别处理
      *
      * @param fields
      */
-    private void setSpecialParam(Map fields) {
+    private void setSpecialParam(Map fields, JiraProjectConfig projectConfig, JiraClientV2 client) {
 
         try {
-            Map<String, JiraCreateMetadataResponse.Field> createMetadata = jiraClientV2.getCreateMetadata(projectConfig.getJiraKey(), projectConfig.getJiraIssueTypeId());
+            Map<String, JiraCreateMetadataResponse.Field> createMetadata = getCreateMetadata(client, projectConfig);
 
             for (String key : createMetadata.keySet()) {
                 JiraCreateMetadataResponse.Field item = createMetadata.get(key);
@@ -584,7 +796,13 @@ public class JiraPlatform extends AbstractPlatform {
         }
     }
 
-    private Map<String, Object> buildUpdateParam(PlatformIssuesUpdateRequest request, String issueTypeId, String jiraKey) {
+    /**
+     * @param jiraImageFileNames 收集富文本中从 jira 同步过来的图片名称
+     */
+    private Map<String, Object> buildUpdateParam(PlatformIssuesUpdateRequest request, JiraProjectConfig projectConfig,
+                                                 JiraClientV2 client, Set<String> jiraImageFileNames) {
+        String issueTypeId = projectConfig.getJiraIssueTypeId();
+        String jiraKey = projectConfig.getJiraKey();
         request.setPlatform(key);
         Map fields = new LinkedHashMap<>();
         Map project = new LinkedHashMap<>();
@@ -599,8 +817,8 @@ public class JiraPlatform extends AbstractPlatform {
         Map addJiraIssueParam = new LinkedHashMap();
         addJiraIssueParam.put("fields", fields);
 
-        if (isThirdPartTemplate) {
-            parseCustomFiled(request, fields);
+        if (projectConfig.isThirdPartTemplate()) {
+            parseCustomFiled(request, fields, jiraImageFileNames);
             request.setTitle(fields.get(SUMMARY_FIELD_NAME).toString());
         } else {
             fields.put(SUMMARY_FIELD_NAME, request.getTitle());
@@ -608,9 +826,9 @@ public class JiraPlatform extends AbstractPlatform {
             if (CollectionUtils.isNotEmpty(request.getCustomFieldList())) {
                 request.getCustomFieldList().add(getRichTextCustomField(DESCRIPTION_FIELD_NAME, request.getDescription()));
             }
-            parseCustomFiled(request, fields);
+            parseCustomFiled(request, fields, jiraImageFileNames);
         }
-        setSpecialParam(fields);
+        setSpecialParam(fields, projectConfig, client);
 
         return addJiraIssueParam;
     }
@@ -641,7 +859,7 @@ public class JiraPlatform extends AbstractPlatform {
         return result;
     }
 
-    private void parseCustomFiled(PlatformIssuesUpdateRequest request, Map fields) {
+    private void parseCustomFiled(PlatformIssuesUpdateRequest request, Map fields, Set<String> jiraImageFileNames) {
         List<PlatformCustomFieldItemDTO> customFields = request.getCustomFieldList();
 
         if (CollectionUtils.isNotEmpty(customFields)) {
@@ -684,7 +902,7 @@ public class JiraPlatform extends AbstractPlatform {
                                     fields.put(fieldName, attr);
                                 }
                             } else if (StringUtils.equalsAny(item.getType(), "richText")) {
-                                fields.put(fieldName, parseRichTextImageUrlToJira(item.getValue().toString()));
+                                fields.put(fieldName, parseRichTextImageUrlToJira(item.getValue().toString(), jiraImageFileNames));
                                 if (fieldName.equals(DESCRIPTION_FIELD_NAME)) {
                                     request.setDescription(item.getValue().toString());
                                 }
@@ -702,27 +920,31 @@ public class JiraPlatform extends AbstractPlatform {
 
     @Override
     public IssuesWithBLOBs updateIssue(PlatformIssuesUpdateRequest request) {
-        setUserConfig(request.getUserPlatformUserConfig());
+        JiraClientV2 client = getUserClient(request.getUserPlatformUserConfig());
 
-        projectConfig = getProjectConfig(request.getProjectConfig());
-        jiraImageFileNames = new HashSet<>();
-        this.isThirdPartTemplate = this.projectConfig.isThirdPartTemplate();
+        JiraProjectConfig projectConfig = getProjectConfig(request.getProjectConfig());
+        Set<String> jiraImageFileNames = new HashSet<>();
 
         validateProjectKey(projectConfig.getJiraKey());
-        validateIssueType();
+        validateIssueType(projectConfig);
 
-        Map param = buildUpdateParam(request, projectConfig.getJiraIssueTypeId(), projectConfig.getJiraKey());
-        jiraClientV2.updateIssue(request.getPlatformId(), JSON.toJSONString(param));
+        Map param = buildUpdateParam(request, projectConfig, client, jiraImageFileNames);
+        try {
+            client.updateIssue(request.getPlatformId(), JSON.toJSONString(param));
+        } catch (RuntimeException e) {
+            invalidateCreateMetadata(client, projectConfig);
+            throw e;
+        }
 
         // 同步Jira富文本有关的附件
-        syncJiraRichTextAttachment(request);
+        syncJiraRichTextAttachment(request, client, jiraImageFileNames);
 
         if (request.getTransitions() != null) {
             try {
-                List<JiraTransitionsResponse.Transitions> transitions = jiraClientV2.getTransitions(request.getPlatformId());
+                List<JiraTransitionsResponse.Transitions> transitions = client.getTransitions(request.getPlatformId());
                 transitions.forEach(transition -> {
                     if (Objects.equals(request.getPlatformStatus(), transition.getTo().getName())) {
-                        jiraClientV2.setTransitions(request.getPlatformId(), transition);
+                        client.setTransitions(request.getPlatformId(), transition);
                     }
                 });
             } catch (Exception e) {
@@ -746,6 +968,8 @@ public class JiraPlatform extends AbstractPlatform {
     public void validateProjectConfig(String projectConfigStr) {
         try {
             JiraProjectConfig projectConfig = getProjectConfig(projectConfigStr);
+            // 重新保存项目配置时，使用最新的字段配置
+            invalidateCreateMetadata(jiraClientV2, projectConfig);
             JiraIssueProject project = jiraClientV2.getProject(projectConfig.getJiraKey());
             if (project != null && StringUtils.isBlank(project.getId())) {
                 MSPluginException.throwException("项目不存在");
@@ -758,8 +982,8 @@ public class JiraPlatform extends AbstractPlatform {
 
     @Override
     public void validateUserConfig(String userConfig) {
-        setUserConfig(userConfig);
-        jiraClientV2.auth();
+        // 校验的账号不一定正确，不放入缓存
+        new JiraClientV2(getUserConfig(userConfig)).auth();
     }
 
     @Override
@@ -769,30 +993,60 @@ public class JiraPlatform extends AbstractPlatform {
 
     @Override
     public SyncIssuesResult syncIssues(SyncIssuesRequest request) {
-        projectConfig = getProjectConfig(request.getProjectConfig());
-        super.isThirdPartTemplate = projectConfig.isThirdPartTemplate();
+        JiraProjectConfig projectConfig = getProjectConfig(request.getProjectConfig());
+        boolean isThirdPartTemplate = projectConfig.isThirdPartTemplate();
+        String defaultCustomFields;
 
-        if (projectConfig.isThirdPartTemplate()) {
-            super.defaultCustomFields = getCustomFieldsValuesString(getThirdPartCustomField(request.getProjectConfig()));
+        if (isThirdPartTemplate) {
+            defaultCustomFields = getCustomFieldsValuesString(getThirdPartCustomField(request.getProjectConfig()));
         } else {
-            super.defaultCustomFields = request.getDefaultCustomFields();
+            defaultCustomFields = request.getDefaultCustomFields();
         }
 
         List<PlatformIssuesDTO> issues = request.getIssues();
 
         SyncIssuesResult syncIssuesResult = new SyncIssuesResult();
 
+        // 批量获取，与单个获取一样返回全部字段，按 key 和 id 都可以找到
+        // 批量获取失败时无法判断哪些缺陷已删除，直接报错
+        Map<String, JiraIssue> jiraIssueMap = new HashMap<>();
+        try {
+            List<String> platformIds = issues.stream()
+                    .map(PlatformIssuesDTO::getPlatformId)
+                    .filter(StringUtils::isNotBlank)
+                    .distinct()
+                    .collect(Collectors.toList());
+            for (JiraIssue jiraIssue : jiraClientV2.getIssuesByKeys(platformIds, null)) {
+                jiraIssueMap.put(jiraIssue.getKey(), jiraIssue);
+                jiraIssueMap.put(jiraIssue.getId(), jiraIssue);
+            }
+            List<String> missingIds = platformIds.stream()
+                    .filter(platformId -> !jiraIssueMap.containsKey(platformId))
+                    .collect(Collectors.toList());
+            if (CollectionUtils.isNotEmpty(missingIds)) {
+                // 移动到其他项目的缺陷 key 发生了变化，按原来的 key 再查一次
+                jiraIssueMap.putAll(jiraClientV2.getMovedIssues(missingIds, null));
+            }
+        } catch (Exception e) {
+            LogUtil.error(e);
+            MSPluginException.throwException(e.getMessage());
+        }
+
         issues.forEach(item -> {
+            if (StringUtils.isBlank(item.getPlatformId())) {
+                return;
+            }
+            JiraIssue jiraIssue = jiraIssueMap.get(item.getPlatformId());
+            if (jiraIssue == null) {
+                // 两次查询都没有返回，已删除或没有权限
+                syncIssuesResult.getDeleteIssuesIds().add(item.getId());
+                return;
+            }
             try {
-                JiraIssue jiraIssue = jiraClientV2.getIssues(item.getPlatformId());
-                item = getUpdateIssue(item, jiraIssue);
+                item = getUpdateIssue(item, jiraIssue, defaultCustomFields, isThirdPartTemplate);
                 syncIssuesResult.getUpdateIssues().add(item);
                 // 同步第三方平台附件
                 syncJiraIssueAttachments(syncIssuesResult, item, jiraIssue);
-            } catch (HttpClientErrorException e) {
-                if (e.getRawStatusCode() == 404) {
-                    syncIssuesResult.getDeleteIssuesIds().add(item.getId());
-                }
             } catch (Exception e) {
                 LogUtil.error(e);
             }
@@ -804,7 +1058,8 @@ public class JiraPlatform extends AbstractPlatform {
     public List<PlatformStatusDTO> getStatusList(String projectConfig) {
         List<PlatformStatusDTO> platformStatusDTOS = new ArrayList<>();
         JiraProjectConfig jiraProjectConfig = getProjectConfig(projectConfig);
-        List<JiraStatusResponse> statusResponses = jiraClientV2.getStatus(jiraProjectConfig.getJiraKey());
+        String jiraKey = jiraProjectConfig.getJiraKey();
+        List<JiraStatusResponse> statusResponses = singleFlight("getStatus", () -> jiraClientV2.getStatus(jiraKey), jiraKey);
         List<List<JiraStatusResponse.Statuses>> issueTypeStatus = statusResponses.stream().filter(jiraStatusResponse -> jiraProjectConfig.getJiraIssueTypeId().equals(jiraStatusResponse.getId())).map(JiraStatusResponse::getStatuses).collect(Collectors.toList());
         if (CollectionUtils.isNotEmpty(issueTypeStatus)) {
             issueTypeStatus.forEach(item -> {
@@ -837,23 +1092,32 @@ public class JiraPlatform extends AbstractPlatform {
 
     @Override
     public List<PlatformCustomFieldItemDTO> getThirdPartCustomField(String projectConfigStr) {
-        Set<String> ignoreSet = new HashSet() {{
-            add(ATTACHMENT_NAME);
-        }};
-        projectConfig = getProjectConfig(projectConfigStr);
+        JiraProjectConfig projectConfig = getProjectConfig(projectConfigStr);
+        List<PlatformCustomFieldItemDTO> fields = CUSTOM_FIELD_CACHE.get(getCustomFieldKey(projectConfig),
+                k -> Collections.unmodifiableList(buildThirdPartCustomField(projectConfig)));
+        // 缓存的字段是共享的，复制后返回
+        return fields.stream()
+                .map(item -> BeanUtils.copyBean(new PlatformCustomFieldItemDTO(), item))
+                .collect(Collectors.toList());
+    }
 
-        Map<String, JiraCreateMetadataResponse.Field> createMetadata =
-                jiraClientV2.getCreateMetadata(projectConfig.getJiraKey(), projectConfig.getJiraIssueTypeId());
+    private List<PlatformCustomFieldItemDTO> buildThirdPartCustomField(JiraProjectConfig projectConfig) {
+        Set<String> ignoreSet = Collections.singleton(ATTACHMENT_NAME);
 
-        String assignableOptions = "[]";
-        String allUserOptions = "[]";
+        Map<String, JiraCreateMetadataResponse.Field> createMetadata = getCreateMetadata(jiraClientV2, projectConfig);
 
-        try {
-             assignableOptions = JSON.toJSONString(getAssignableOptions(projectConfig.getJiraKey(), null));
-             allUserOptions = JSON.toJSONString(getUserSearchOptions(StringUtils.EMPTY));
-        } catch (Exception e) {
-            LogUtil.error(e);
-        }
+        // 用户、迭代和史诗的选项互不依赖，并发查询
+        List<Supplier<String>> optionQueries = Arrays.asList(
+                () -> getOptionsString(() -> getAssignableOptions(projectConfig.getJiraKey(), null), "[]"),
+                () -> getOptionsString(() -> getUserSearchOptions(StringUtils.EMPTY), "[]"),
+                () -> hasCustomFieldType(createMetadata, SPRINT_FIELD_NAME) ? getOptionsString(() -> getSprintOptions(projectConfig.getJiraKey(), null), null) : null,
+                () -> hasCustomFieldType(createMetadata, EPIC_LINK_FIELD_TYPE) ? getOptionsString(() -> getAllEpicOptions(projectConfig.getJiraKey()), null) : null
+        );
+        List<String> optionResults = ParallelPageFetcher.map(optionQueries, optionQueries.size(), Supplier::get);
+        String assignableOptions = optionResults.get(0);
+        String allUserOptions = optionResults.get(1);
+        String sprintOptions = optionResults.get(2);
+        String epicOptions = optionResults.get(3);
 
         List<PlatformCustomFieldItemDTO> fields = new ArrayList<>();
         Character filedKey = 'A';
@@ -876,7 +1140,7 @@ public class JiraPlatform extends AbstractPlatform {
             setCustomFiledType(schema, customField, assignableOptions, allUserOptions);
             setCustomFiledDefaultValue(customField, item);
             List options = getAllowedValuesOptions(item.getAllowedValues());
-            setSpecialFieldOptions(customField, schema);
+            setSpecialFieldOptions(customField, schema, sprintOptions, epicOptions);
             if (options != null) {
                 customField.setOptions(JSON.toJSONString(options));
             }
@@ -915,41 +1179,66 @@ public class JiraPlatform extends AbstractPlatform {
         return filedKey;
     }
 
-    private void setSpecialFieldOptions(PlatformCustomFieldItemDTO customField, JiraCreateMetadataResponse.Schema item) {
-        try {
-            String customType = item.getCustom();
-            if (StringUtils.isNotBlank(customType)) {
-                if (customType.contains(SPRINT_FIELD_NAME)) {
-                    List<JiraSprint> sprints = jiraClientV2.getSprint(null);
-                    List<SelectOption> options = new ArrayList<>();
-                    sprints.forEach(sprint -> options.add(new SelectOption(StringUtils.join(sprint.getName(), " (", sprint.getBoardName(), ")"), sprint.getId().toString())));
-                    customField.setOptions(JSON.toJSONString(options));
+    /**
+     * @param sprintOptions 迭代选项，查询失败时为 null
+     * @param epicOptions   史诗选项，查询失败时为 null
+     */
+    private void setSpecialFieldOptions(PlatformCustomFieldItemDTO customField, JiraCreateMetadataResponse.Schema item,
+                                        String sprintOptions, String epicOptions) {
+        String customType = item.getCustom();
+        if (StringUtils.isNotBlank(customType)) {
+            if (customType.contains(SPRINT_FIELD_NAME)) {
+                if (sprintOptions != null) {
+                    customField.setOptions(sprintOptions);
                     customField.setInputSearch(true);
                     customField.setOptionMethod("getSprintOptions");
-                } else if (StringUtils.contains(customType, "epic-link")) {
-                    List<JiraEpic> epics = jiraClientV2.getEpics();
-                    List<SelectOption> options = new ArrayList<>();
-                    epics.forEach(sprint -> options.add(new SelectOption(sprint.getName(), sprint.getKey())));
-                    customField.setOptions(JSON.toJSONString(options));
+                }
+            } else if (StringUtils.contains(customType, EPIC_LINK_FIELD_TYPE)) {
+                if (epicOptions != null) {
+                    customField.setOptions(epicOptions);
                 }
             }
+        }
+    }
+
+    private boolean hasCustomFieldType(Map<String, JiraCreateMetadataResponse.Field> createMetadata, String customType) {
+        return createMetadata.values().stream()
+                .map(JiraCreateMetadataResponse.Field::getSchema)
+                .anyMatch(schema -> schema != null && StringUtils.contains(schema.getCustom(), customType));
+    }
+
+    /**
+     * @return 查询失败时返回 defaultValue
+     */
+    private String getOptionsString(Supplier<List> optionsQuery, String defaultValue) {
+        try {
+            return JSON.toJSONString(optionsQuery.get());
+        } catch (Exception e) {
+            LogUtil.error(e);
+            return defaultValue;
+        }
+    }
+
+    private List<SelectOption> getAllEpicOptions(String jiraKey) {
+        List<JiraEpic> epics;
+        try {
+            epics = getAgileCatalog(jiraKey).getEpics();
         } catch (Exception e) {
+            // 没有 agile 接口
             LogUtil.error(e);
+            epics = null;
+        }
+        if (epics == null) {
+            // 项目没有看板时从看板查不到史诗，使用 greenhopper 接口，最多返回 1000 个史诗
+            epics = jiraClientV2.getEpics();
         }
+        List<SelectOption> options = new ArrayList<>();
+        epics.forEach(epic -> options.add(new SelectOption(epic.getName(), epic.getKey())));
+        return options;
     }
 
 
     private void setCustomFiledType(JiraCreateMetadataResponse.Schema schema, PlatformCustomFieldItemDTO customField, String assignableOptions, String allUserOptions) {
-        Map<String, String> fieldTypeMap = new HashMap() {{
-            put(SUMMARY_FIELD_NAME, CustomFieldType.INPUT.getValue());
-            put(DESCRIPTION_FIELD_NAME, CustomFieldType.RICH_TEXT.getValue());
-            put("components", CustomFieldType.MULTIPLE_SELECT.getValue());
-            put("fixVersions", CustomFieldType.MULTIPLE_SELECT.getValue());
-            put("versions", CustomFieldType.MULTIPLE_SELECT.getValue());
-            put("priority", CustomFieldType.SELECT.getValue());
-            put("environment", CustomFieldType.RICH_TEXT.getValue());
-            put("labels", CustomFieldType.MULTIPLE_INPUT.getValue());
-        }};
         String customType = schema.getCustom();
         String value = null;
         if (StringUtils.isNotBlank(customType)) {
@@ -1004,14 +1293,14 @@ public class JiraPlatform extends AbstractPlatform {
                 value = CustomFieldType.SELECT.getValue();
             } else if (customType.contains("customfieldtypes") && StringUtils.equals(schema.getType(), "project")) {
                 value = CustomFieldType.SELECT.getValue();
-            } else if (customType.contains("epic-link")) {
+            } else if (customType.contains(EPIC_LINK_FIELD_TYPE)) {
                 value = CustomFieldType.SELECT.getValue();
             } else if (customType.contains(SPRINT_FIELD_NAME)) {
                 value = CustomFieldType.SELECT.getValue();
             }
         } else {
             // 系统字段
-            value = fieldTypeMap.get(customField.getId());
+            value = SYSTEM_FIELD_TYPE_MAP.get(customField.getId());
             String type = schema.getType();
             if (TIME_TRACKING_FIELD_NAME.equals(type)) {
                 customField.setId(ORIGINAL_ESTIMATE_TRACKING_FIELD_NAME);
@@ -1185,7 +1474,7 @@ public class JiraPlatform extends AbstractPlatform {
         jiraClientV2.getAttachmentContent(fileKey, inputStreamHandler);
     }
 
-    public void syncJiraRichTextAttachment(PlatformIssuesUpdateRequest request) {
+    public void syncJiraRichTextAttachment(PlatformIssuesUpdateRequest request, JiraClientV2 client, Set<String> jiraImageFileNames) {
         Set<String> jiraFileNames = new HashSet<>();
         Set<String> msFileNames = request.getMsAttachmentNames();
 
@@ -1207,7 +1496,7 @@ public class JiraPlatform extends AbstractPlatform {
         }
 
         // 获得所有Jira附件, 遍历删除MS中不存在的
-        JiraIssue jiraIssue = jiraClientV2.getIssues(request.getPlatformId());
+        JiraIssue jiraIssue = client.getIssues(request.getPlatformId());
         Map fields = jiraIssue.getFields();
         List attachments = (List) fields.get(ATTACHMENT_NAME);
         if (!attachments.isEmpty() && attachments.size() > 0) {
@@ -1217,7 +1506,7 @@ public class JiraPlatform extends AbstractPlatform {
                 jiraFileNames.add(filename);
                 if (!msFileNames.contains(filename) && !jiraImageFileNames.contains(filename)) {
                     String fileId = attachment.get("id").toString();
-                    jiraClientV2.deleteAttachment(fileId);
+                    client.deleteAttachment(fileId);
                 }
             }
         }
@@ -1226,7 +1515,7 @@ public class JiraPlatform extends AbstractPlatform {
         List<File> imageFiles = getImageFiles(request);
         imageFiles.forEach(img -> {
             if (!jiraFileNames.contains(img.getName())) {
-                jiraClientV2.uploadAttachment(request.getPlatformId(), img);
+                client.uploadAttachment(request.getPlatformId(), img);
             }
         });
     }
@@ -1257,7 +1546,7 @@ public class JiraPlatform extends AbstractPlatform {
         }
     }
 
-    private String parseRichTextImageUrlToJira(String parseRichText) {
+    private String parseRichTextImageUrlToJira(String parseRichText, Set<String> jiraImageFileNames) {
         if (StringUtils.isBlank(parseRichText)) {
             return "";
         }
@@ -1300,83 +1589,157 @@ public class JiraPlatform extends AbstractPlatform {
     @Override
     public void syncAllIssues(SyncAllIssuesRequest syncRequest) {
         JiraProjectConfig projectConfig = getProjectConfig(syncRequest.getProjectConfig());
-        this.isThirdPartTemplate = projectConfig.isThirdPartTemplate();
+        boolean isThirdPartTemplate = projectConfig.isThirdPartTemplate();
+
+        // 下次增量同步从本次开始的时间查起，同步过程中更新的缺陷下次会再同步
+        long syncWatermark = System.currentTimeMillis();
+        boolean incremental = isIncrementalSync(syncRequest);
+        long updatedAfter = incremental ? syncRequest.getSyncWatermark() - SYNC_WATERMARK_OVERLAP : 0;
 
-        int startAt = 0;
         // Jira最大支持100
         int maxResults = 100;
-        List<JiraIssue> jiraIssues;
-        int currentSize;
+        String defaultCustomFields;
 
-        if (this.isThirdPartTemplate) {
-            super.defaultCustomFields = getCustomFieldsValuesString(getThirdPartCustomField(syncRequest.getProjectConfig()));
+        if (isThirdPartTemplate) {
+            defaultCustomFields = getCustomFieldsValuesString(getThirdPartCustomField(syncRequest.getProjectConfig()));
         } else {
-            super.defaultCustomFields = syncRequest.getDefaultCustomFields();
+            defaultCustomFields = syncRequest.getDefaultCustomFields();
         }
 
-        this.projectConfig = projectConfig;
+        String jiraKey = projectConfig.getJiraKey();
+        validateIssueType(projectConfig);
+        validateProjectKey(jiraKey);
+
+        String issueTypeId = projectConfig.getJiraIssueTypeId();
+        // 只查询需要的字段，附件一起返回，不用再单独查询
+        String fields = getSyncFields(defaultCustomFields);
+        int parallelism = getSyncParallelism(syncRequest);
+        Supplier<String> lastKey = () -> jiraClientV2.getProjectLastIssueKey(jiraKey, issueTypeId);
+        // 按 key 分成互不重叠的区间并发查询，区间内用上一页最后一个 key 翻页，同步过程中有缺陷被删除也不会漏掉后面的缺陷
+        List<KeyRangePageFetcher> rangeFetchers = new ArrayList<>();
+        if (incremental) {
+            // 每页重新计算相对时间，保证查询的起始时间不晚于 updatedAfter
+            // 创建时间范围在 jql 中过滤，只查询需要的缺陷
+            rangeFetchers.add(new KeyRangePageFetcher(maxResults, parallelism,
+                    (afterKey, toKey, queryFields) -> jiraClientV2.getProjectIssuesUpdatedWithin(maxResults, jiraKey, issueTypeId,
+                            getUpdatedMinutes(updatedAfter), afterKey, toKey, queryFields, syncRequest.getCreateTime(), syncRequest.isPre()),
+                    fields, lastKey, (jiraIssues, attachmentQuery) -> toSyncIssuePage(jiraIssues, syncRequest, attachmentQuery)));
+        } else {
+            rangeFetchers.add(new KeyRangePageFetcher(maxResults, parallelism,
+                    (afterKey, toKey, queryFields) -> jiraClientV2.getProjectIssuesAfterKey(maxResults, jiraKey, issueTypeId,
+                            afterKey, toKey, queryFields, syncRequest.getCreateTime(), syncRequest.isPre()),
+                    fields, lastKey, (jiraIssues, attachmentQuery) -> toSyncIssuePage(jiraIssues, syncRequest, attachmentQuery)));
+        }
 
-        do {
-            SyncAllIssuesResult syncIssuesResult = new SyncAllIssuesResult();
+        if (!incremental && syncRequest.getCreateTime() != null) {
+            // 指定了创建时间时只查询范围内缺陷的详情，allIds 另外按 key 查询整个项目，避免范围外的缺陷被当作已删除
+            rangeFetchers.add(new KeyRangePageFetcher(maxResults, parallelism,
+                    (afterKey, toKey, queryFields) -> jiraClientV2.getProjectIssuesAfterKey(maxResults, jiraKey, issueTypeId,
+                            afterKey, toKey, queryFields, null, false),
+                    "created", lastKey, (jiraIssues, attachmentQuery) -> new SyncIssuePage(getSyncIds(jiraIssues), new ArrayList<>())));
+        }
+        Supplier<SyncIssuePage> fetcher = rangeFetchers.size() > 1 ? concat(rangeFetchers.get(0), rangeFetchers.get(1)) : rangeFetchers.get(0);
 
-            String jiraKey = projectConfig.getJiraKey();
-            validateIssueType();
-            validateProjectKey(jiraKey);
+        Function<SyncIssuePage, HashMap<Object, Object>> converter = page -> {
+            SyncAllIssuesResult syncIssuesResult = new SyncAllIssuesResult();
+            syncIssuesResult.setAllIds(page.allIds);
 
-            JiraIssueListResponse result = jiraClientV2.getProjectIssues(startAt, maxResults, jiraKey, projectConfig.getJiraIssueTypeId());
-            jiraIssues = result.getIssues();
+            for (JiraIssue jiraIssue : page.issues) {
+                PlatformIssuesDTO issue = getUpdateIssue(null, jiraIssue, defaultCustomFields, isThirdPartTemplate);
 
-            currentSize = jiraIssues.size();
-            List<String> allIds = jiraIssues.stream().map(JiraIssue::getId).collect(Collectors.toList());
-            // 创建的时候是 platform_id 存的key，之前全量同步存的是id，统一改成存key，这里做兼容处理
-            allIds.addAll(jiraIssues.stream().map(JiraIssue::getKey).collect(Collectors.toList()));
+                // 设置临时UUID，同步附件时需要用
+                issue.setId(UUID.randomUUID().toString());
 
-            syncIssuesResult.setAllIds(allIds);
+                issue.setPlatformId(jiraIssue.getKey());
+                syncIssuesResult.getUpdateIssues().add(issue);
 
-            if (syncRequest != null) {
-                jiraIssues = filterSyncJiraIssueByCreated(jiraIssues, syncRequest);
+                //同步第三方平台系统附件字段
+                syncJiraIssueAttachments(syncIssuesResult, issue, jiraIssue);
             }
-            Map<String, Object> attachmentMap = new HashMap<>();
-
-            if (CollectionUtils.isNotEmpty(jiraIssues)) {
-                if (!jiraIssues.get(0).getFields().containsKey(ATTACHMENT_NAME)) {
-                    // 如果不包含附件信息，则查询下附件
-                    try {
-                        JiraIssueListResponse response = jiraClientV2.getProjectIssuesAttachment(startAt, maxResults,
-                                jiraKey, projectConfig.getJiraIssueTypeId());
-                        List<JiraIssue> jiraIssuesWithAttachment = response.getIssues();
-                        attachmentMap = jiraIssuesWithAttachment.stream()
-                                .collect(Collectors.toMap(JiraIssue::getKey,
-                                        i -> i.getFields().get(ATTACHMENT_NAME)));
-                    } catch (Exception e) {
-                        LogUtil.error(e);
-                    }
+
+            syncIssuesResult.setIncremental(incremental);
+            syncIssuesResult.setSyncWatermark(syncWatermark);
+            return buildSyncAllParam(syncIssuesResult);
+        };
+        try {
+            // 查询下一页的同时转换上一页，并回调保存
+            new SyncPipeline<>(fetcher, converter, syncRequest.getHandleSyncFunc()::accept).run();
+        } finally {
+            rangeFetchers.forEach(KeyRangePageFetcher::close);
+        }
+    }
+
+    private long getUpdatedMinutes(long updatedAfter) {
+        return (System.currentTimeMillis() - updatedAfter) / 60000 + 1;
+    }
+
+    /**
+     * 同步需要的字段：标题、状态等固定字段和模板中自定义字段对应的 jira 字段
+     */
+    private String getSyncFields(String customFields) {
+        Set<String> fields = new LinkedHashSet<>(SYNC_BASE_FIELDS);
+        if (StringUtils.isNotBlank(customFields)) {
+            for (PlatformCustomFieldItemDTO item : JSON.parseArray(customFields, PlatformCustomFieldItemDTO.class)) {
+                String customData = item.getCustomData();
+                if (StringUtils.isNotBlank(customData) && FIELD_ID_PATTERN.matcher(customData).matches()) {
+                    fields.add(customData);
                 }
+            }
+        }
+        return String.join(",", fields);
+    }
 
+    private SyncIssuePage toSyncIssuePage(List<JiraIssue> jiraIssues, SyncAllIssuesRequest syncRequest,
+                                          Supplier<JiraIssueListResponse> attachmentQuery) {
+        // 全量同步指定了创建时间时，allIds 单独查询
+        List<String> allIds = syncRequest.getCreateTime() == null || isIncrementalSync(syncRequest)
+                ? getSyncIds(jiraIssues) : new ArrayList<>();
+
+        // jql 按分钟过滤，这里再精确过滤一次
+        jiraIssues = filterSyncJiraIssueByCreated(jiraIssues, syncRequest);
+
+        if (CollectionUtils.isNotEmpty(jiraIssues) && !jiraIssues.get(0).getFields().containsKey(ATTACHMENT_NAME)) {
+            // 查询时已指定附件字段，仍然不包含附件信息时，再单独查询下附件
+            try {
+                Map<String, Object> attachmentMap = attachmentQuery.get().getIssues().stream()
+                        .collect(Collectors.toMap(JiraIssue::getKey,
+                                i -> i.getFields().get(ATTACHMENT_NAME)));
                 for (JiraIssue jiraIssue : jiraIssues) {
                     if (attachmentMap.containsKey(jiraIssue.getKey())) {
                         // 接口可能缺少附件字段，单独获取
                         jiraIssue.getFields().put(ATTACHMENT_NAME, attachmentMap.get(jiraIssue.getKey()));
                     }
-                    PlatformIssuesDTO issue = getUpdateIssue(null, jiraIssue);
-
-                    // 设置临时UUID，同步附件时需要用
-                    issue.setId(UUID.randomUUID().toString());
-
-                    issue.setPlatformId(jiraIssue.getKey());
-                    syncIssuesResult.getUpdateIssues().add(issue);
-
-                    //同步第三方平台系统附件字段
-                    syncJiraIssueAttachments(syncIssuesResult, issue, jiraIssue);
                 }
+            } catch (Exception e) {
+                LogUtil.error(e);
             }
+        }
+        return new SyncIssuePage(allIds, jiraIssues);
+    }
 
-            startAt += maxResults;
+    private List<String> getSyncIds(List<JiraIssue> jiraIssues) {
+        List<String> allIds = jiraIssues.stream().map(JiraIssue::getId).collect(Collectors.toList());
+        // 创建的时候是 platform_id 存的key，之前全量同步存的是id，统一改成存key，这里做兼容处理
+        allIds.addAll(jiraIssues.stream().map(JiraIssue::getKey).collect(Collectors.toList()));
+        return allIds;
+    }
 
-            HashMap<Object, Object> syncParam = buildSyncAllParam(syncIssuesResult);
+    private static <T> Supplier<T> concat(Supplier<T> first, Supplier<T> second) {
+        return new Supplier<T>() {
+            private boolean firstDone;
 
-            syncRequest.getHandleSyncFunc().accept(syncParam);
-        } while (currentSize >= maxResults);
+            @Override
+            public T get() {
+                if (!firstDone) {
+                    T value = first.get();
+                    if (value != null) {
+                        return value;
+                    }
+                    firstDone = true;
+                }
+                return second.get();
+            }
+        };
     }
 
     private List<JiraIssue> filterSyncJiraIssueByCreated(List<JiraIssue> jiraIssues, SyncAllIssuesRequest syncRequest) {
@@ -1386,7 +1749,7 @@ public class JiraPlatform extends AbstractPlatform {
         List<JiraIssue> filterIssues = jiraIssues.stream().filter(jiraIssue -> {
             long createTimeMills = 0;
             try {
-                createTimeMills = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").parse((String) jiraIssue.getFields().get("created")).getTime();
+                createTimeMills = SDF_WITH_OFFSET.get().parse((String) jiraIssue.getFields().get("created")).getTime();
                 if (syncRequest.isPre()) {
                     return createTimeMills <= syncRequest.getCreateTime().longValue();
                 } else {
@@ -1427,4 +1790,161 @@ public class JiraPlatform extends AbstractPlatform {
             return valObj.get("key");
         }
     }
+
+    /**
+     * 查询 afterKey 之后到 toKey 为止的一页缺陷，按 key 升序，afterKey 和 toKey 为空表示不限制
+     */
+    private interface KeyRangeQuery {
+        JiraIssueListResponse query(String afterKey, String toKey, String fields);
+    }
+
+    /**
+     * 按 key 的序号把项目分成互不重叠的区间，并发查询各个区间，区间内用上一页最后一个 key 翻页
+     * 根据第一页返回的总数和最大的 key 划分区间，平均每个区间约一页，最后一个区间不设上限，同步过程中新建的缺陷也能查到
+     * 按 key 的顺序逐页返回，同时最多查询 parallelism 个区间，使用完需要调用 close 结束线程
+     */
+    private static class KeyRangePageFetcher implements Supplier<SyncIssuePage>, AutoCloseable {
+        /**
+         * 区间的序号跨度最多为每页数量的倍数，缺陷分布不均匀时限制一个区间的页数
+         */
+        private static final int MAX_RANGE_PAGES = 10;
+
+        private final int maxResults;
+        private final int parallelism;
+        private final KeyRangeQuery query;
+        private final String fields;
+        private final Supplier<String> lastKey;
+        /**
+         * 参数为查询结果和单独查询这一页附件的方法
+         */
+        private final BiFunction<List<JiraIssue>, Supplier<JiraIssueListResponse>, SyncIssuePage> toPage;
+        private final Queue<SyncIssuePage> pages = new ArrayDeque<>();
+        private volatile ParallelPageFetcher<List<SyncIssuePage>> rangeFetcher;
+        private volatile boolean closed;
+        private boolean started;
+
+        private KeyRangePageFetcher(int maxResults, int parallelism, KeyRangeQuery query, String fields, Supplier<String> lastKey,
+                                    BiFunction<List<JiraIssue>, Supplier<JiraIssueListResponse>, SyncIssuePage> toPage) {
+            this.maxResults = maxResults;
+            this.parallelism = parallelism;
+            this.query = query;
+            this.fields = fields;
+            this.lastKey = lastKey;
+            this.toPage = toPage;
+        }
+
+        @Override
+        public SyncIssuePage get() {
+            if (!started) {
+                started = true;
+                start();
+            }
+            while (pages.isEmpty()) {
+                List<SyncIssuePage> rangePages = rangeFetcher == null ? null : rangeFetcher.get();
+                if (rangePages == null) {
+                    return null;
+                }
+                pages.addAll(rangePages);
+            }
+            return pages.poll();
+        }
+
+        /**
+         * 查询第一页，根据总数划分后面的区间
+         */
+        private void start() {
+            JiraIssueListResponse firstResponse = query.query(null, null, fields);
+            List<JiraIssue> firstIssues = firstResponse.getIssues();
+            pages.add(toPage.apply(firstIssues, () -> query.query(null, null, ATTACHMENT_NAME)));
+            if (firstIssues.size() < maxResults) {
+                return;
+            }
+            String afterKey = firstIssues.get(firstIssues.size() - 1).getKey();
+            List<String> bounds = new ArrayList<>();
+            bounds.add(afterKey);
+            long remaining = firstResponse.getTotal() - firstIssues.size();
+            String prefix = afterKey.substring(0, afterKey.lastIndexOf('-') + 1);
+            long start = getKeyNumber(afterKey);
+            String maxKey = remaining > 0 && start > 0 ? lastKey.get() : null;
+            long end = maxKey != null && maxKey.startsWith(prefix) ? getKeyNumber(maxKey) : -1;
+            if (end > start) {
+                long span = end - start;
+                long width = Math.min(Math.max(span * maxResults / remaining, maxResults), (long) maxResults * MAX_RANGE_PAGES);
+                for (long number = start + width; number < end; number += width) {
+                    bounds.add(prefix + number);
+                }
+            }
+            // 最后一个区间不设上限
+            bounds.add(null);
+            rangeFetcher = new ParallelPageFetcher<>(0, bounds.size() - 2, Math.min(parallelism, bounds.size() - 1),
+                    i -> getRangePages(bounds.get(i), bounds.get(i + 1)));
+            if (closed) {
+                // 查询第一页时已被关闭
+                rangeFetcher.close();
+            }
+        }
+
+        private List<SyncIssuePage> getRangePages(String fromKey, String toKey) {
+            List<SyncIssuePage> rangePages = new ArrayList<>();
+            String afterKey = fromKey;
+            while (true) {
+                String pageAfterKey = afterKey;
+                List<JiraIssue> jiraIssues = query.query(pageAfterKey, toKey, fields).getIssues();
+                rangePages.add(toPage.apply(jiraIssues, () -> query.query(pageAfterKey, toKey, ATTACHMENT_NAME)));
+                if (jiraIssues.size() < maxResults) {
+                    return rangePages;
+                }
+                afterKey = jiraIssues.get(jiraIssues.size() - 1).getKey();
+                if (afterKey.equals(toKey)) {
+                    // 已查到区间的最后一个 key
+                    return rangePages;
+                }
+            }
+        }
+
+        /**
+         * @return key 中的序号，无法解析时返回 -1
+         */
+        private static long getKeyNumber(String key) {
+            try {
+                return Long.parseLong(key.substring(key.lastIndexOf('-') + 1));
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        /**
+         * 可以在其他线程中调用
+         */
+        @Override
+        public void close() {
+            closed = true;
+            if (rangeFetcher != null) {
+                rangeFetcher.close();
+            }
+        }
+    }
+
+    private static class SyncIssuePage {
+        private final List<String> allIds;
+        private final List<JiraIssue> issues;
+
+        private SyncIssuePage(List<String> allIds, List<JiraIssue> issues) {
+            this.allIds = allIds;
+            this.issues = issues;
+        }
+    }
+
+    private static class RichTextResult {
+        private final String text;
+        /**
+         * 转换时替换掉的附件名
+         */
+        private final Set<String> usedFileNames;
+
+        private RichTextResult(String text, Set<String> usedFileNames) {
+            this.text = text;
+            this.usedFileNames = usedFileNames;
+        }
+    }
 }
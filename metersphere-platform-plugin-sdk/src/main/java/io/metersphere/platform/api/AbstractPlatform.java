@@ -3,12 +3,14 @@ package io.metersphere.platform.api;
 import io.metersphere.plugin.exception.MSPluginException;
 import io.metersphere.plugin.utils.JSON;
 import io.metersphere.plugin.utils.LogUtil;
+import io.metersphere.platform.cache.ConfigCache;
+import io.metersphere.platform.cache.ContentKey;
+import io.metersphere.platform.cache.SingleFlight;
 import io.metersphere.platform.constants.CustomFieldType;
 import io.metersphere.platform.domain.*;
+import io.metersphere.platform.utils.HtmlTextConverter;
+import io.metersphere.platform.utils.RichTextUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.safety.Safelist;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.MultiValueMap;
@@ -21,27 +23,98 @@ import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 public abstract class AbstractPlatform implements Platform {
     protected String key;
     protected PlatformRequest request;
+    /**
+     * @deprecated 每次请求的状态，isShareable 返回 true 的实例不能使用，由调用方作为参数传递
+     */
+    @Deprecated
     protected boolean isThirdPartTemplate;
+    /**
+     * @deprecated 每次请求的状态，isShareable 返回 true 的实例不能使用，由调用方作为参数传递
+     */
+    @Deprecated
     protected String defaultCustomFields;
 
     public static final String MD_IMAGE_DIR = "/opt/metersphere/data/image/markdown";
     public static final String PROXY_PATH = "/resource/md/get/path?platform=%s&workspaceId=%s&path=%s";
     public static final String ID_FIELD_NAME = "id";
     public static final String MARKDOWN_IMAGE_REGULAR = "(\\!\\[.*?\\]\\((.*?)\\))";
+    /**
+     * 增量同步时往前多查询的时间，避免与第三方平台的时钟偏差导致漏掉缺陷
+     */
+    public static final long SYNC_WATERMARK_OVERLAP = 10 * 60 * 1000L;
+    public static final int DEFAULT_SYNC_PARALLELISM = 4;
+    /**
+     * 并发查询的上限，避免给第三方平台造成太大压力
+     */
+    public static final int MAX_SYNC_PARALLELISM = 16;
+
+    /**
+     * 每个插件实现类单独的配置缓存，插件卸载后随类一起释放
+     */
+    private static final ClassValue<ConfigCache> CONFIG_CACHES = new ClassValue<>() {
+        @Override
+        protected ConfigCache computeValue(Class<?> type) {
+            return new ConfigCache(256);
+        }
+    };
+
+    /**
+     * 相同查询的结果保留时间，同一时间打开缺陷页面的多个用户共用一次查询
+     */
+    public static final long SINGLE_FLIGHT_RESULT_TTL = 5 * 1000L;
+
+    /**
+     * 每个插件实现类单独合并请求，插件卸载后随类一起释放
+     */
+    private static final ClassValue<SingleFlight<ContentKey, Object>> SINGLE_FLIGHTS = new ClassValue<>() {
+        @Override
+        protected SingleFlight<ContentKey, Object> computeValue(Class<?> type) {
+            return new SingleFlight<>(1000, SINGLE_FLIGHT_RESULT_TTL);
+        }
+    };
 
+    /**
+     * 返回的对象会被缓存共享，不能修改，需要修改时先复制
+     */
     public <T> T getIntegrationConfig(Class<T> clazz) {
         String config = request.getIntegrationConfig();
         if (StringUtils.isBlank(config)) {
             MSPluginException.throwException("配置为空");
         }
-        return JSON.parseObject(config, clazz);
+        return parseConfig(config, clazz);
+    }
+
+    /**
+     * 解析服务集成、项目、用户等配置，相同的配置只解析一次
+     * 返回的对象会被缓存共享，不能修改，需要修改时先复制
+     */
+    protected <T> T parseConfig(String config, Class<T> clazz) {
+        return CONFIG_CACHES.get(getClass()).get(config, clazz);
+    }
+
+    /**
+     * 合并使用服务集成账号的相同查询，按服务集成配置（地址和认证信息）、操作和参数区分
+     * 返回的结果会被多个调用方共享，不能修改，需要修改时先复制
+     *
+     * @param operation 查询的名称
+     * @param args      查询参数
+     */
+    @SuppressWarnings("unchecked")
+    protected <T> T singleFlight(String operation, Supplier<T> loader, String... args) {
+        ContentKey.Hasher hasher = ContentKey.hasher()
+                .put(request.getIntegrationConfig())
+                .put(operation);
+        for (String arg : args) {
+            hasher.put(arg);
+        }
+        return (T) SINGLE_FLIGHTS.get(getClass()).execute(hasher.build(), loader::get);
     }
 
     @Override
@@ -74,9 +147,39 @@ public abstract class AbstractPlatform implements Platform {
         syncParam.put("updateIssues", syncIssuesResult.getUpdateIssues());
         syncParam.put("attachmentMap", syncIssuesResult.getAttachmentMap());
         syncParam.put("allIds", syncIssuesResult.getAllIds());
+        syncParam.put("incremental", syncIssuesResult.isIncremental());
+        syncParam.put("syncWatermark", syncIssuesResult.getSyncWatermark());
         return syncParam;
     }
 
+    /**
+     * 有上次同步的时间，并且没有要求全量同步，则增量同步
+     */
+    protected boolean isIncrementalSync(SyncAllIssuesRequest request) {
+        return !request.isFullSync() && request.getSyncWatermark() != null;
+    }
+
+    /**
+     * 同步缺陷时同时查询的页数
+     */
+    protected int getSyncParallelism(SyncAllIssuesRequest request) {
+        return getSyncParallelism(request.getSyncParallelism());
+    }
+
+    /**
+     * 同步指定缺陷时同时查询的缺陷数
+     */
+    protected int getSyncParallelism(SyncIssuesRequest request) {
+        return getSyncParallelism(request.getSyncParallelism());
+    }
+
+    private int getSyncParallelism(Integer parallelism) {
+        if (parallelism == null || parallelism <= 0) {
+            return DEFAULT_SYNC_PARALLELISM;
+        }
+        return Math.min(parallelism, MAX_SYNC_PARALLELISM);
+    }
+
     @Override
     public void getAttachmentContent(String fileKey, Consumer<InputStream> inputStreamHandler) {}
 
@@ -130,11 +233,30 @@ public abstract class AbstractPlatform implements Platform {
         return JSON.toJSONString(fields);
     }
 
+    /**
+     * @deprecated 读取成员变量 isThirdPartTemplate，使用 {@link #syncIssueCustomFieldList(List, Map, boolean)}
+     */
+    @Deprecated
     protected List<PlatformCustomFieldItemDTO> syncIssueCustomFieldList(String customFieldsStr, Map issue) {
        return syncIssueCustomFieldList(JSON.parseArray(customFieldsStr, PlatformCustomFieldItemDTO.class), issue);
     }
 
+    /**
+     * @deprecated 读取成员变量 isThirdPartTemplate，使用 {@link #syncIssueCustomFieldList(List, Map, boolean)}
+     */
+    @Deprecated
     protected List<PlatformCustomFieldItemDTO> syncIssueCustomFieldList(List<PlatformCustomFieldItemDTO> customFields, Map issue) {
+        if (isShareable()) {
+            // 共享的实例中成员变量可能是其他请求设置的
+            throw new IllegalStateException("shareable platform must pass isThirdPartTemplate");
+        }
+        return syncIssueCustomFieldList(customFields, issue, this.isThirdPartTemplate);
+    }
+
+    /**
+     * 可共享的实例不在成员变量中保存 isThirdPartTemplate，由调用方传入
+     */
+    protected List<PlatformCustomFieldItemDTO> syncIssueCustomFieldList(List<PlatformCustomFieldItemDTO> customFields, Map issue, boolean isThirdPartTemplate) {
         Set<String> names = issue.keySet();
         Iterator<PlatformCustomFieldItemDTO> iterator = customFields.iterator();
         while (iterator.hasNext()) {
@@ -163,7 +285,7 @@ public abstract class AbstractPlatform implements Platform {
                 } else {
                     item.setValue(null);
                 }
-            } else if (!this.isThirdPartTemplate) {
+            } else if (!isThirdPartTemplate) {
                 // 如果不是第三方模板，并且不是需要更新的模板字段，则去掉，否则空值会覆盖原字段的值
                 iterator.remove();
             } else {
@@ -216,11 +338,10 @@ public abstract class AbstractPlatform implements Platform {
 
     public List<File> getImageFiles(String input) {
         List<File> files = new ArrayList<>();
-        Pattern pattern = Pattern.compile(MARKDOWN_IMAGE_REGULAR);
         if (StringUtils.isBlank(input)) {
-            return new ArrayList<>();
+            return files;
         }
-        Matcher matcher = pattern.matcher(input);
+        Matcher matcher = RichTextUtils.MARKDOWN_IMAGE_PATTERN.matcher(input);
         while (matcher.find()) {
             try {
                 String path = matcher.group(2);
@@ -247,67 +368,44 @@ public abstract class AbstractPlatform implements Platform {
      * @return
      */
     protected String htmlDesc2MsDesc(String htmlDesc) {
-        String desc = htmlImg2MsImg(htmlDesc);
-        Document document = Jsoup.parse(desc);
-        document.outputSettings(new Document.OutputSettings().prettyPrint(false));
-        document.select("br").append("\\n");
-        document.select("p").prepend("\\n\\n");
-        desc = document.html().replaceAll("\\\\n", StringUtils.LF);
-        desc = Jsoup.clean(desc, "", Safelist.none(), new Document.OutputSettings().prettyPrint(false));
-        return desc.replace("&nbsp;", "");
+        return HtmlTextConverter.convert(htmlImg2MsImg(htmlDesc));
     }
 
     protected String htmlImg2MsImg(String input) {
         // <img src="xxx/resource/md/get/a0b19136_中心主题.png"/> ->  ![中心主题.png](/resource/md/get/a0b19136_中心主题.png)
-        String regex = "(<img\\s*src=\\\"(.*?)\\\".*?>)";
-        Pattern pattern = Pattern.compile(regex);
         if (StringUtils.isBlank(input)) {
             return "";
         }
-        Matcher matcher = pattern.matcher(input);
-        String result = input;
-        while (matcher.find()) {
+        return RichTextUtils.replace(input, RichTextUtils.HTML_IMAGE_PATTERN, matcher -> {
             String url = matcher.group(2);
             if (url.contains("/resource/md/get/")) { // 兼容旧数据
                 String path = url.substring(url.indexOf("/resource/md/get/"));
                 String name = path.substring(path.indexOf("/resource/md/get/") + 26);
-                String mdLink = "![" + name + "](" + path + ")";
-                result = matcher.replaceFirst(mdLink);
-                matcher = pattern.matcher(result);
-            } else if(url.contains("/resource/md/get")) { //新数据走这里
+                return "![" + name + "](" + path + ")";
+            } else if (url.contains("/resource/md/get")) { //新数据走这里
                 String path = url.substring(url.indexOf("/resource/md/get"));
                 String name = path.substring(path.indexOf("/resource/md/get") + 35);
-                String mdLink = "![" + name + "](" + path + ")";
-                result = matcher.replaceFirst(mdLink);
-                matcher = pattern.matcher(result);
+                return "![" + name + "](" + path + ")";
             }
-        }
-        return result;
+            // 其他图片保持原样
+            return null;
+        });
     }
 
     protected String msImg2HtmlImg(String input, String endpoint) {
         // ![中心主题.png](/resource/md/get/a0b19136_中心主题.png) -> <img src="xxx/resource/md/get/a0b19136_中心主题.png"/>
-        Pattern pattern = Pattern.compile(MARKDOWN_IMAGE_REGULAR);
         if (StringUtils.isBlank(input)) {
             return "";
         }
-        Matcher matcher = pattern.matcher(input);
-        String result = input;
-        while (matcher.find()) {
+        String baseUrl = StringUtils.removeEnd(endpoint, "/");
+        return RichTextUtils.replace(input, RichTextUtils.MARKDOWN_IMAGE_PATTERN, matcher -> {
             String path = matcher.group(2);
-            if (endpoint.endsWith("/")) {
-                endpoint = endpoint.substring(0, endpoint.length() - 1);
-            }
             String format = " <img src=\"%s\"/>";
             if (path.trim().startsWith("http")) {
-                path = String.format(format, path);
-            } else {
-                path = String.format(format, endpoint + path);
+                return String.format(format, path);
             }
-            result = matcher.replaceFirst(path);
-            matcher = pattern.matcher(result);
-        }
-        return result;
+            return String.format(format, baseUrl + path);
+        });
     }
 
     protected void addCustomFields(PlatformIssuesUpdateRequest issuesRequest, MultiValueMap<String, Object> paramMap) {
@@ -30,7 +30,22 @@ public abstract class BaseClient {
 
     protected  RestTemplate restTemplate;
 
-     {
+    protected BaseClient() {
+        restTemplate = createRestTemplate();
+    }
+
+    /**
+     * 多个客户端共用同一个连接池时使用
+     */
+    protected BaseClient(RestTemplate restTemplate) {
+        this.restTemplate = restTemplate;
+    }
+
+    /**
+     * 创建使用独立连接池的 RestTemplate，忽略 https 证书校验，支持系统代理
+     * 认证信息在每次请求的请求头中设置，可以在不同账号的客户端间共用
+     */
+    protected static RestTemplate createRestTemplate() {
         try {
             TrustStrategy acceptingTrustStrategy = (X509Certificate[] chain, String authType) -> true;
 
@@ -55,10 +70,11 @@ public abstract class BaseClient {
             HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory();
             requestFactory.setHttpClient(httpClient);
 
-            restTemplate = new RestTemplate(requestFactory);
+            return new RestTemplate(requestFactory);
         } catch (Exception e) {
             LogUtil.error(e);
         }
+        return null;
     }
 
     protected  HttpHeaders getBasicHttpHeaders(String userName, String passWd) {
@@ -158,4 +158,14 @@ public interface Platform {
      * @param request
      */
     void handleDemandUpdateBatch(DemandUpdateRequest request);
+
+    /**
+     * 实例是否可以被复用
+     * 返回 true 时，PlatformPluginManager 会按服务集成配置和用户配置缓存实例，多个请求、多个线程共用同一实例
+     * 实现类需要保证每次调用的状态不保存在成员变量中
+     * @return 默认不复用，每次请求创建新实例
+     */
+    default boolean isShareable() {
+        return false;
+    }
 }
@@ -0,0 +1,77 @@
+package io.metersphere.platform.cache;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 第三方平台地址支持的接口和参数格式，第一次请求时探测，之后直接使用可用的接口
+ * 按客户端和地址共享，同一地址的不同账号使用同一份记录，不同插件和客户端的记录互不影响
+ * 记录超过 EXPIRE_TIME 后失效，平台升级后重新探测；记录的地址超过 MAX_PROFILES 时淘汰最久未使用的
+ */
+public class CapabilityProfile {
+
+    public static final long EXPIRE_TIME = 6 * 60 * 60 * 1000L;
+    public static final int MAX_PROFILES = 1000;
+
+    /**
+     * 只保存字符串，不持有插件中的类，插件卸载后不影响类加载器释放
+     */
+    private static final LocalCache<List<String>, CapabilityProfile> PROFILES = new LocalCache<>(MAX_PROFILES);
+
+    private final Map<String, Entry> capabilities = new ConcurrentHashMap<>();
+
+    /**
+     * 加锁保证同一个 key 只有一份记录，探测结果不会丢失
+     *
+     * @param client   客户端的类名，不同插件和客户端分开记录
+     * @param endpoint 平台地址，包含接口前缀时不同版本的接口分开记录
+     */
+    public static synchronized CapabilityProfile of(String client, String endpoint) {
+        return PROFILES.get(Arrays.asList(client, endpoint), k -> new CapabilityProfile());
+    }
+
+    /**
+     * @return 记录的值，没有探测过或已过期返回 null
+     */
+    public String get(String capability) {
+        Entry entry = capabilities.get(capability);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - entry.time > EXPIRE_TIME) {
+            capabilities.remove(capability, entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    public void put(String capability, String value) {
+        capabilities.put(capability, new Entry(value));
+    }
+
+    /**
+     * 没有探测过时认为支持，调用失败后再标记为不支持
+     */
+    public boolean isSupported(String capability) {
+        return !Boolean.FALSE.toString().equals(get(capability));
+    }
+
+    public void setSupported(String capability, boolean supported) {
+        put(capability, String.valueOf(supported));
+    }
+
+    public void invalidate() {
+        capabilities.clear();
+    }
+
+    private static class Entry {
+        private final String value;
+        private final long time = System.currentTimeMillis();
+
+        private Entry(String value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package io.metersphere.platform.cache;
+
+import io.metersphere.plugin.utils.JSON;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 配置解析结果缓存，key 为配置的 json 原文和解析的类型
+ * 超出容量时淘汰最久未使用的配置
+ * 解析结果在多个请求间共享，使用方不能修改，需要修改时先复制
+ */
+public class ConfigCache {
+
+    /**
+     * 类型只保存类名，不持有插件中的类
+     */
+    private final LocalCache<List<String>, Object> configs;
+
+    public ConfigCache(int maximumSize) {
+        this.configs = new LocalCache<>(maximumSize);
+    }
+
+    public <T> T get(String config, Class<T> clazz) {
+        // 解析不加锁，并发时可能重复解析，结果相同
+        return clazz.cast(configs.get(Arrays.asList(config, clazz.getName()), k -> JSON.parseObject(config, clazz)));
+    }
+
+    public int size() {
+        return configs.size();
+    }
+
+    public void clear() {
+        configs.invalidateAll();
+    }
+}
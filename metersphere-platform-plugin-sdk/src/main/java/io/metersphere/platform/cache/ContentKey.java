@@ -0,0 +1,101 @@
+package io.metersphere.platform.cache;
+
+/**
+ * 按内容计算的缓存 key，只保存 128 位哈希值，不持有原文
+ * 用于缓存长文本（如缺陷描述）的转换结果，原文不变即可命中
+ */
+public final class ContentKey {
+
+    private static final long SEED1 = 0x9E3779B97F4A7C15L;
+    private static final long SEED2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long MULTIPLIER1 = 0x87C37B91114253D5L;
+    private static final long MULTIPLIER2 = 0x4CF5AD432745937FL;
+
+    private final long high;
+    private final long low;
+
+    private ContentKey(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * @param parts 参与计算的内容，顺序不同结果不同，null 与空字符串区分
+     */
+    public static ContentKey of(String... parts) {
+        Hasher hasher = new Hasher();
+        for (String part : parts) {
+            hasher.put(part);
+        }
+        return hasher.build();
+    }
+
+    public static Hasher hasher() {
+        return new Hasher();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ContentKey)) {
+            return false;
+        }
+        ContentKey that = (ContentKey) o;
+        return high == that.high && low == that.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (low ^ (low >>> 32));
+    }
+
+    /**
+     * 逐段追加内容计算 key，避免先拼接成大字符串
+     */
+    public static class Hasher {
+        private long h1 = SEED1;
+        private long h2 = SEED2;
+
+        private Hasher() {
+        }
+
+        public Hasher put(String part) {
+            if (part == null) {
+                mix(-1);
+                return this;
+            }
+            // 先写入长度，保证分段边界不同的内容不会相同
+            mix(part.length());
+            int i = 0;
+            int length = part.length();
+            for (; i + 3 < length; i += 4) {
+                mix(((long) part.charAt(i) << 48) | ((long) part.charAt(i + 1) << 32)
+                        | ((long) part.charAt(i + 2) << 16) | part.charAt(i + 3));
+            }
+            for (; i < length; i++) {
+                mix(part.charAt(i));
+            }
+            return this;
+        }
+
+        public ContentKey build() {
+            return new ContentKey(fmix(h1 ^ h2), fmix(h2 + h1 * MULTIPLIER1));
+        }
+
+        private void mix(long k) {
+            h1 = Long.rotateLeft((h1 ^ k) * MULTIPLIER1, 31) * MULTIPLIER2;
+            h2 = Long.rotateLeft((h2 + k) * MULTIPLIER2, 33) * MULTIPLIER1 ^ h1;
+        }
+
+        private static long fmix(long k) {
+            k ^= k >>> 33;
+            k *= 0xFF51AFD7ED558CCDL;
+            k ^= k >>> 33;
+            k *= 0xC4CEB9FE1A85EC53L;
+            k ^= k >>> 33;
+            return k;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package io.metersphere.platform.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 有容量上限的本地缓存，超出容量时淘汰最久未访问的数据
+ * 插件在自己的类中以静态变量持有，插件重新加载后随旧的类加载器一起释放
+ *
+ * @param <K> key
+ * @param <V> value
+ */
+public class LocalCache<K, V> {
+
+    private final int maximumSize;
+    /**
+     * 写入后的过期时间（毫秒），小于等于 0 表示不过期
+     */
+    private final long expireAfterWrite;
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    public LocalCache(int maximumSize) {
+        this(maximumSize, 0);
+    }
+
+    public LocalCache(int maximumSize, long expireAfterWrite) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive");
+        }
+        this.maximumSize = maximumSize;
+        this.expireAfterWrite = expireAfterWrite;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > LocalCache.this.maximumSize;
+            }
+        };
+    }
+
+    /**
+     * @return 缓存的值，不存在或已过期返回 null
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (isExpired(entry)) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    public synchronized void put(K key, V value) {
+        if (key == null || value == null) {
+            return;
+        }
+        entries.put(key, new Entry<>(value, System.currentTimeMillis()));
+    }
+
+    /**
+     * 获取缓存，不存在时调用 loader 计算并缓存
+     * 计算过程不加锁，并发时可能重复计算，以后写入的为准
+     */
+    public V get(K key, Function<K, V> loader) {
+        V value = get(key);
+        if (value == null) {
+            value = loader.apply(key);
+            put(key, value);
+        }
+        return value;
+    }
+
+    public synchronized void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private boolean isExpired(Entry<V> entry) {
+        return expireAfterWrite > 0 && System.currentTimeMillis() - entry.writeTime >= expireAfterWrite;
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long writeTime;
+
+        private Entry(V value, long writeTime) {
+            this.value = value;
+            this.writeTime = writeTime;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package io.metersphere.platform.cache;
+
+import io.metersphere.plugin.utils.LogUtil;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 可后台刷新的本地缓存，用于查询较慢、变化较少的平台元数据
+ * 写入超过 refreshAfterWrite 后仍返回旧值，同时在后台线程中重新加载，调用方不用等待
+ * 加载较慢、可以先不使用缓存的数据使用 getNow，第一次加载也在后台进行
+ * 后台刷新使用所有缓存共用的线程池，线程数和排队的任务数有上限，排满时放弃本次刷新，下次获取时再刷新
+ * 写入超过 expireAfterWrite 后不再使用旧值，在调用线程中重新加载，同一个 key 并发加载时只加载一次
+ *
+ * @param <K> key
+ * @param <V> value
+ */
+public class RefreshableCache<K, V> {
+
+    private static final int REFRESH_THREADS = 4;
+    private static final int REFRESH_QUEUE_SIZE = 200;
+    private static final ThreadPoolExecutor REFRESH_EXECUTOR = newRefreshExecutor();
+
+    private final int maximumSize;
+    private final long refreshAfterWrite;
+    private final long expireAfterWrite;
+    private final LinkedHashMap<K, Entry<V>> entries;
+    private final SingleFlight<K, V> loading = new SingleFlight<>();
+    private volatile long retryAfterFailure;
+
+    /**
+     * @param refreshAfterWrite 写入后开始后台刷新的时间（毫秒）
+     * @param expireAfterWrite  写入后的过期时间（毫秒），需要大于 refreshAfterWrite
+     */
+    public RefreshableCache(int maximumSize, long refreshAfterWrite, long expireAfterWrite) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive");
+        }
+        if (refreshAfterWrite <= 0 || expireAfterWrite <= refreshAfterWrite) {
+            throw new IllegalArgumentException("expireAfterWrite must be greater than refreshAfterWrite");
+        }
+        this.maximumSize = maximumSize;
+        this.refreshAfterWrite = refreshAfterWrite;
+        this.expireAfterWrite = expireAfterWrite;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > RefreshableCache.this.maximumSize;
+            }
+        };
+    }
+
+    /**
+     * 获取缓存，不存在或已过期时调用 loader 加载并缓存，需要刷新时在后台调用 loader
+     * 加载失败时抛出 loader 的异常，后台刷新失败时保留旧值，间隔 retryAfterFailure 后再刷新
+     */
+    public V get(K key, Function<K, V> loader) {
+        Entry<V> entry;
+        boolean refresh = false;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && entry.value == null) {
+                // getNow 还没有加载完成，在调用线程中加载
+                entry = null;
+            } else if (entry != null) {
+                long now = System.currentTimeMillis();
+                if (now - entry.writeTime >= expireAfterWrite) {
+                    entries.remove(key);
+                    entry = null;
+                } else if (now >= entry.nextRefreshTime && !entry.refreshing) {
+                    entry.refreshing = true;
+                    refresh = true;
+                }
+            }
+        }
+        if (entry == null) {
+            return loading.execute(key, () -> {
+                V value = loader.apply(key);
+                put(key, value);
+                return value;
+            });
+        }
+        if (refresh) {
+            refreshAsync(key, entry, loader);
+        }
+        return entry.value;
+    }
+
+    /**
+     * 获取缓存，不等待加载，不存在或已过期时在后台加载并返回 null，需要刷新时返回旧值并在后台刷新
+     * 后台加载失败或 loader 返回 null 时，间隔 retryAfterFailure 后再加载
+     */
+    public V getNow(K key, Function<K, V> loader) {
+        Entry<V> entry;
+        boolean refresh = false;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            entry = entries.get(key);
+            if (entry == null || (entry.value != null && now - entry.writeTime >= expireAfterWrite)) {
+                // 占位，加载完成前返回 null
+                entry = new Entry<>(null, now, now);
+                entries.put(key, entry);
+            }
+            if (now >= entry.nextRefreshTime && !entry.refreshing) {
+                entry.refreshing = true;
+                refresh = true;
+            }
+        }
+        if (refresh) {
+            refreshAsync(key, entry, loader);
+        }
+        return entry.value;
+    }
+
+    /**
+     * 获取已加载且没有过期的值，不加载也不刷新
+     */
+    public synchronized V getIfPresent(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null || entry.value == null || System.currentTimeMillis() - entry.writeTime >= expireAfterWrite) {
+            return null;
+        }
+        return entry.value;
+    }
+
+    public synchronized void put(K key, V value) {
+        if (key == null || value == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        entries.put(key, new Entry<>(value, now, now + refreshAfterWrite));
+    }
+
+    public synchronized void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getRetryAfterFailure() {
+        return retryAfterFailure;
+    }
+
+    /**
+     * @param retryAfterFailure 后台加载失败后再次加载的间隔（毫秒），默认为 0，下次获取时就重新加载
+     */
+    public void setRetryAfterFailure(long retryAfterFailure) {
+        this.retryAfterFailure = retryAfterFailure;
+    }
+
+    private void refreshAsync(K key, Entry<V> entry, Function<K, V> loader) {
+        // 加载时可能通过上下文类加载器加载插件中的类
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        try {
+            REFRESH_EXECUTOR.execute(() -> {
+                Thread thread = Thread.currentThread();
+                ClassLoader original = thread.getContextClassLoader();
+                thread.setContextClassLoader(contextClassLoader);
+                try {
+                    refresh(key, entry, loader);
+                } finally {
+                    // 线程在插件间共用，不持有插件的类加载器
+                    thread.setContextClassLoader(original);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            entry.refreshing = false;
+        }
+    }
+
+    private void refresh(K key, Entry<V> entry, Function<K, V> loader) {
+        boolean loaded = false;
+        try {
+            V value = loader.apply(key);
+            if (value != null) {
+                synchronized (this) {
+                    // 刷新期间被清除或重新写入的不覆盖
+                    if (entries.get(key) == entry) {
+                        put(key, value);
+                    }
+                }
+                loaded = true;
+            }
+        } catch (Exception e) {
+            LogUtil.error(e);
+        } finally {
+            if (!loaded) {
+                entry.nextRefreshTime = System.currentTimeMillis() + retryAfterFailure;
+            }
+            entry.refreshing = false;
+        }
+    }
+
+    private static ThreadPoolExecutor newRefreshExecutor() {
+        AtomicInteger threadNum = new AtomicInteger();
+        ClassLoader classLoader = RefreshableCache.class.getClassLoader();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(REFRESH_THREADS, REFRESH_THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(REFRESH_QUEUE_SIZE), runnable -> {
+            Thread thread = new Thread(runnable, "cache-refresh-" + threadNum.incrementAndGet());
+            thread.setDaemon(true);
+            // 创建线程时会继承调用方的上下文类加载器，改为 SDK 的类加载器
+            thread.setContextClassLoader(classLoader);
+            return thread;
+        });
+        // 空闲时不保留线程
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static class Entry<V> {
+        /**
+         * getNow 加载完成前为 null
+         */
+        private final V value;
+        private final long writeTime;
+        private volatile long nextRefreshTime;
+        private volatile boolean refreshing;
+
+        private Entry(V value, long writeTime, long nextRefreshTime) {
+            this.value = value;
+            this.writeTime = writeTime;
+            this.nextRefreshTime = nextRefreshTime;
+        }
+    }
+}
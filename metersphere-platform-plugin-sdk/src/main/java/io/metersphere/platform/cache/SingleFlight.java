@@ -0,0 +1,88 @@
+package io.metersphere.platform.cache;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * 合并相同的并发请求，同一个 key 同时只有一个线程执行查询，其他线程等待并共享结果
+ * 可以设置结果的保留时间，在这段时间内再次请求直接返回上次的结果
+ *
+ * @param <K> key，需要包含地址、认证信息、操作和参数
+ * @param <V> 查询结果，多个调用方共享，不能修改
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LocalCache<K, V> results;
+
+    public SingleFlight() {
+        this(0, 0);
+    }
+
+    /**
+     * @param maximumSize 保留结果的最大数量
+     * @param resultTtl   结果的保留时间（毫秒），小于等于 0 表示查询完成后不保留
+     */
+    public SingleFlight(int maximumSize, long resultTtl) {
+        this.results = resultTtl > 0 ? new LocalCache<>(maximumSize, resultTtl) : null;
+    }
+
+    /**
+     * 在调用线程中执行 loader，相同 key 的查询正在执行时等待其结果
+     * 查询失败时所有等待的线程都抛出该异常，失败的结果不保留
+     */
+    public V execute(K key, Supplier<V> loader) {
+        if (results != null) {
+            V value = results.get(key);
+            if (value != null) {
+                return value;
+            }
+        }
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            return await(running);
+        }
+        try {
+            V value = loader.get();
+            if (results != null) {
+                // 先保留结果再移除，之后的请求不会重复查询
+                results.put(key, value);
+            }
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    public void invalidate(K key) {
+        if (results != null) {
+            results.invalidate(key);
+        }
+    }
+
+    private V await(CompletableFuture<V> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+}
@@ -28,4 +28,21 @@ public class SyncAllIssuesRequest extends SyncIssuesRequest {
     private Long createTime;
 
     private Consumer<Map> handleSyncFunc;
+
+    /**
+     * 上次同步开始的时间（毫秒时间戳），不为空时只同步之后更新的缺陷
+     * 取上次同步回调结果中的 syncWatermark
+     */
+    private Long syncWatermark;
+
+    /**
+     * 忽略 syncWatermark 全量同步
+     * 增量同步无法发现第三方平台删除的缺陷，需要定期全量同步核对
+     */
+    private boolean fullSync;
+
+    /**
+     * 同时查询的页数，为空时使用默认值
+     */
+    private Integer syncParallelism;
 }
@@ -16,6 +16,15 @@ public class SyncAllIssuesResult extends SyncIssuesResult {
     private Map<String, List<PlatformAttachment>> attachmentMap = new HashMap<>();
     /**
      * 保存当前查询到的缺陷的平台ID
+     * 全量同步时所有回调的 allIds 包含项目中的所有缺陷，请求指定了 createTime 也不例外
      */
     private List<String> allIds = new ArrayList<>();
+    /**
+     * 是否增量同步，增量同步时 allIds 只包含有更新的缺陷，不能用来判断缺陷是否被删除
+     */
+    private boolean incremental;
+    /**
+     * 本次同步开始的时间，同步完成后保存，下次同步时作为 SyncAllIssuesRequest 的 syncWatermark
+     */
+    private Long syncWatermark;
 }
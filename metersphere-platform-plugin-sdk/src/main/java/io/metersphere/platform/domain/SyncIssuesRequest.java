@@ -20,4 +20,8 @@ public class SyncIssuesRequest {
      * 需要同步的缺陷列表
      */
     private List<PlatformIssuesDTO> issues;
+    /**
+     * 同时查询的缺陷数，为空时使用默认值
+     */
+    private Integer syncParallelism;
 }
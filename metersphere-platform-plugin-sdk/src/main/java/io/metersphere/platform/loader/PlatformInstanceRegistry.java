@@ -0,0 +1,98 @@
+package io.metersphere.platform.loader;
+
+import io.metersphere.platform.api.Platform;
+import io.metersphere.platform.domain.PlatformRequest;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 可复用的 Platform 实例
+ * 按插件、服务集成配置、工作空间和用户配置缓存 isShareable 返回 true 的实例
+ * 插件重新加载后类加载器变化，旧实例不再使用；超过空闲时间未使用的实例会被清理
+ */
+public class PlatformInstanceRegistry {
+
+    public static final long DEFAULT_IDLE_TIMEOUT = 30 * 60 * 1000L;
+    /**
+     * 清理空闲实例的最小间隔，在获取实例时顺带清理，不额外启动线程
+     */
+    private static final long SWEEP_INTERVAL = 60 * 1000L;
+
+    private final Map<List<String>, Entry> instances = new ConcurrentHashMap<>();
+    private volatile long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private volatile long lastSweepTime = System.currentTimeMillis();
+
+    /**
+     * 获取可复用的实例，没有则调用 creator 创建
+     *
+     * @param pluginId    插件ID
+     * @param classLoader 插件当前的类加载器
+     * @param request     创建实例的参数
+     * @param creator     创建实例
+     * @return 实例不可复用时，每次都返回新创建的实例
+     */
+    public Platform get(String pluginId, ClassLoader classLoader, PlatformRequest request, Supplier<Platform> creator) {
+        long now = System.currentTimeMillis();
+        sweep(now);
+        List<String> key = Arrays.asList(pluginId, request.getIntegrationConfig(), request.getWorkspaceId(), request.getUserPlatformInfo());
+        Entry entry = instances.get(key);
+        if (entry != null && entry.classLoader == classLoader) {
+            entry.lastAccessTime = now;
+            return entry.platform;
+        }
+        Platform platform = creator.get();
+        if (platform != null && platform.isShareable()) {
+            instances.put(key, new Entry(classLoader, platform, now));
+        } else if (entry != null) {
+            instances.remove(key, entry);
+        }
+        return platform;
+    }
+
+    /**
+     * 插件删除或重新加载时调用
+     */
+    public void invalidate(String pluginId) {
+        instances.keySet().removeIf(key -> pluginId.equals(key.get(0)));
+    }
+
+    public void invalidateAll() {
+        instances.clear();
+    }
+
+    public int size() {
+        return instances.size();
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    private void sweep(long now) {
+        if (now - lastSweepTime < SWEEP_INTERVAL) {
+            return;
+        }
+        lastSweepTime = now;
+        instances.values().removeIf(entry -> now - entry.lastAccessTime > idleTimeout);
+    }
+
+    private static class Entry {
+        private final ClassLoader classLoader;
+        private final Platform platform;
+        private volatile long lastAccessTime;
+
+        private Entry(ClassLoader classLoader, Platform platform, long lastAccessTime) {
+            this.classLoader = classLoader;
+            this.platform = platform;
+            this.lastAccessTime = lastAccessTime;
+        }
+    }
+}
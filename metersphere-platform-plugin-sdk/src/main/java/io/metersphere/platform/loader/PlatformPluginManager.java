@@ -1,16 +1,46 @@
 package io.metersphere.platform.loader;
 
 import io.metersphere.plugin.loader.PluginManager;
+import io.metersphere.plugin.storage.StorageStrategy;
 import io.metersphere.platform.api.Platform;
 import io.metersphere.platform.api.PluginMetaInfo;
 import io.metersphere.platform.domain.PlatformRequest;
 import org.apache.commons.lang3.StringUtils;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 
 public class PlatformPluginManager extends PluginManager {
 
+    /**
+     * 可复用的 Platform 实例
+     */
+    protected PlatformInstanceRegistry platformRegistry = new PlatformInstanceRegistry();
+
+    public PlatformInstanceRegistry getPlatformRegistry() {
+        return platformRegistry;
+    }
+
+    @Override
+    public PluginManager loadJar(String pluginId, String jarfileDir, StorageStrategy storageStrategy) throws IOException {
+        platformRegistry.invalidate(pluginId);
+        return super.loadJar(pluginId, jarfileDir, storageStrategy);
+    }
+
+    @Override
+    public PluginManager loadJar(String pluginId, InputStream in, StorageStrategy storageStrategy) throws IOException {
+        platformRegistry.invalidate(pluginId);
+        return super.loadJar(pluginId, in, storageStrategy);
+    }
+
+    @Override
+    public void deletePlugin(String id) {
+        super.deletePlugin(id);
+        platformRegistry.invalidate(id);
+    }
+
     public List<PluginMetaInfo> getPluginMetaInfoList() {
         List<PluginMetaInfo> platFormOptions = new ArrayList<>();
         for (String pluginId : getClassLoaderMap().keySet()) {
@@ -23,7 +53,18 @@ public class PlatformPluginManager extends PluginManager {
         return getImplInstance(pluginId, PluginMetaInfo.class);
     }
 
+    /**
+     * 获取平台实例
+     * 插件的实现类 isShareable 返回 true 时，相同配置的请求复用同一实例
+     */
     public Platform getPlatform(String pluginId, PlatformRequest request) {
+        return platformRegistry.get(pluginId, getClassLoader(pluginId), request, () -> createPlatform(pluginId, request));
+    }
+
+    /**
+     * 创建新的平台实例，不复用
+     */
+    public Platform createPlatform(String pluginId, PlatformRequest request) {
         return getImplInstance(pluginId, Platform.class, request);
     }
 
@@ -0,0 +1,208 @@
+package io.metersphere.platform.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 多关键字匹配（Aho-Corasick 自动机）
+ * 构建一次后，单次扫描文本即可找出其中出现的所有关键字，适合用大量附件名匹配长文本
+ */
+public class AhoCorasickMatcher {
+
+    private static final int ROOT = 0;
+
+    private final List<String> keywords;
+    /**
+     * 状态转移，key 为 状态 << 16 | 字符
+     */
+    private final Map<Long, Integer> transitions = new HashMap<>();
+    /**
+     * 匹配失败时跳转的状态
+     */
+    private final int[] fail;
+    /**
+     * 状态对应的关键字下标，-1 表示不是关键字结尾
+     */
+    private final int[] output;
+    /**
+     * 沿失败链最近的关键字结尾状态，用于找出当前位置结尾的所有关键字
+     */
+    private final int[] outputLink;
+    private int stateCount = 1;
+    /**
+     * 空字符串关键字的下标，任何非空文本都包含空字符串
+     */
+    private int emptyKeyword = -1;
+
+    /**
+     * @param keywords 关键字，匹配结果中的下标与遍历顺序一致
+     */
+    public AhoCorasickMatcher(Collection<String> keywords) {
+        this.keywords = new ArrayList<>(keywords);
+        int capacity = 1;
+        for (String keyword : this.keywords) {
+            capacity += keyword.length();
+        }
+        fail = new int[capacity];
+        output = new int[capacity];
+        outputLink = new int[capacity];
+        Arrays.fill(output, -1);
+        for (int i = 0; i < this.keywords.size(); i++) {
+            addKeyword(this.keywords.get(i), i);
+        }
+        buildFailLinks();
+    }
+
+    public List<String> getKeywords() {
+        return keywords;
+    }
+
+    /**
+     * 查找文本中出现的关键字
+     *
+     * @param text  文本
+     * @param start 开始位置（包含）
+     * @param end   结束位置（不包含）
+     * @return 出现的关键字下标
+     */
+    public BitSet match(CharSequence text, int start, int end) {
+        BitSet matched = new BitSet(keywords.size());
+        if (start >= end || keywords.isEmpty()) {
+            return matched;
+        }
+        if (emptyKeyword >= 0) {
+            matched.set(emptyKeyword);
+        }
+        int state = ROOT;
+        for (int i = start; i < end; i++) {
+            state = next(state, text.charAt(i));
+            for (int s = output[state] >= 0 ? state : outputLink[state]; s != ROOT; s = outputLink[s]) {
+                matched.set(output[s]);
+            }
+        }
+        return matched;
+    }
+
+    public BitSet match(CharSequence text) {
+        return match(text, 0, text.length());
+    }
+
+    /**
+     * 查找文本中所有关键字出现的位置，不包括空字符串
+     *
+     * @return 按开始位置排序，开始位置相同按关键字下标排序
+     */
+    public List<Match> findAll(CharSequence text) {
+        List<Match> matches = new ArrayList<>();
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            state = next(state, text.charAt(i));
+            for (int s = output[state] >= 0 ? state : outputLink[state]; s != ROOT; s = outputLink[s]) {
+                int keyword = output[s];
+                matches.add(new Match(i + 1 - keywords.get(keyword).length(), i + 1, keyword));
+            }
+        }
+        matches.sort(Comparator.comparingInt(Match::getStart).thenComparingInt(Match::getKeyword));
+        return matches;
+    }
+
+    private void addKeyword(String keyword, int index) {
+        if (keyword.isEmpty()) {
+            if (emptyKeyword < 0) {
+                emptyKeyword = index;
+            }
+            return;
+        }
+        int state = ROOT;
+        for (int i = 0; i < keyword.length(); i++) {
+            long key = key(state, keyword.charAt(i));
+            Integer child = transitions.get(key);
+            if (child == null) {
+                child = stateCount++;
+                transitions.put(key, child);
+            }
+            state = child;
+        }
+        if (output[state] < 0) {
+            // 重复的关键字只记录第一个
+            output[state] = index;
+        }
+    }
+
+    private void buildFailLinks() {
+        // 按层遍历，子状态的失败跳转依赖父状态
+        List<List<long[]>> children = new ArrayList<>(stateCount);
+        for (int i = 0; i < stateCount; i++) {
+            children.add(new ArrayList<>());
+        }
+        for (Map.Entry<Long, Integer> entry : transitions.entrySet()) {
+            long key = entry.getKey();
+            children.get((int) (key >>> 16)).add(new long[]{key & 0xFFFF, entry.getValue()});
+        }
+        Deque<Integer> queue = new ArrayDeque<>();
+        queue.add(ROOT);
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (long[] child : children.get(state)) {
+                char c = (char) child[0];
+                int childState = (int) child[1];
+                if (state != ROOT) {
+                    int f = fail[state];
+                    while (f != ROOT && !transitions.containsKey(key(f, c))) {
+                        f = fail[f];
+                    }
+                    Integer target = transitions.get(key(f, c));
+                    fail[childState] = target == null ? ROOT : target;
+                }
+                int f = fail[childState];
+                outputLink[childState] = output[f] >= 0 ? f : outputLink[f];
+                queue.add(childState);
+            }
+        }
+    }
+
+    private int next(int state, char c) {
+        while (true) {
+            Integer target = transitions.get(key(state, c));
+            if (target != null) {
+                return target;
+            }
+            if (state == ROOT) {
+                return ROOT;
+            }
+            state = fail[state];
+        }
+    }
+
+    private static long key(int state, char c) {
+        return ((long) state << 16) | c;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Match {
+        /**
+         * 开始位置（包含）
+         */
+        private int start;
+        /**
+         * 结束位置（不包含）
+         */
+        private int end;
+        /**
+         * 关键字下标
+         */
+        private int keyword;
+    }
+}
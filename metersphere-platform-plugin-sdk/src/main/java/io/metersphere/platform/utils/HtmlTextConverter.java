@@ -0,0 +1,867 @@
+package io.metersphere.platform.utils;
+
+import org.jsoup.nodes.Entities;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * html 富文本转纯文本
+ * 单次扫描 html，不构建 DOM，输出与原先 Jsoup 解析两次（parse + clean）的结果一致：
+ * 1. <br> 后追加换行，<p> 内容前追加两个换行，文本中的 \n 字符串转成换行
+ * 2. 去掉所有标签、注释及 script/style 内容，保留其他文本
+ * 3. 文本中的 & < > 转义输出，去掉 &nbsp;
+ * 4. <pre> 后紧跟的换行两次解析各忽略一次，<select> 中除 option、optgroup 外的标签都被忽略
+ * 不处理表格内游离文本的重排（foster parenting）、plaintext 标签、格式标签与块标签交错嵌套时的节点调整（<pre> 开头的换行除外）
+ * 以及标签属性名中的 \n 字符串，富文本编辑器生成的内容不会出现这些情况
+ */
+public class HtmlTextConverter {
+
+    /**
+     * 内容不输出的标签
+     */
+    private static final Set<String> DATA_TAGS = Set.of("script", "style");
+    /**
+     * 内容按原始文本处理的标签，不解析其中的标签和实体
+     */
+    private static final Set<String> RAW_TEXT_TAGS = Set.of("script", "style", "xmp", "iframe", "noembed", "noframes");
+    /**
+     * 内容按文本处理的标签，不解析其中的标签，会解析实体
+     */
+    private static final Set<String> RC_DATA_TAGS = Set.of("title", "textarea");
+    private static final Set<String> VOID_TAGS = Set.of("area", "base", "basefont", "bgsound", "br", "col", "embed",
+            "frame", "hr", "img", "image", "input", "keygen", "link", "meta", "param", "source", "track", "wbr");
+    /**
+     * 在 head 中的标签，不会开始 body
+     */
+    private static final Set<String> HEAD_TAGS = Set.of("html", "head", "base", "basefont", "bgsound", "link", "meta",
+            "title", "noframes", "style", "script", "noscript", "template");
+    /**
+     * 开始标签会先关闭已打开的 <p>
+     */
+    private static final Set<String> CLOSE_P_TAGS = Set.of("address", "article", "aside", "blockquote", "center",
+            "details", "dialog", "dir", "div", "dl", "fieldset", "figcaption", "figure", "footer", "header", "hgroup",
+            "main", "menu", "nav", "ol", "p", "section", "summary", "ul", "h1", "h2", "h3", "h4", "h5", "h6",
+            "pre", "listing", "form", "hr", "xmp", "li", "dd", "dt", "table", "plaintext");
+    /**
+     * 查找已打开标签时的作用域边界，<p> 的作用域还包括 button
+     */
+    private static final Set<String> SCOPE_TAGS = Set.of("html", "table", "td", "th", "caption", "marquee",
+            "object", "applet", "template");
+    /**
+     * 特殊标签，普通结束标签不会越过这些标签关闭外层标签
+     */
+    private static final Set<String> SPECIAL_TAGS = Set.of("address", "applet", "area", "article", "aside", "base",
+            "basefont", "bgsound", "blockquote", "body", "br", "button", "caption", "center", "col", "colgroup",
+            "command", "dd", "details", "dir", "div", "dl", "dt", "embed", "fieldset", "figcaption", "figure", "footer",
+            "form", "frame", "frameset", "h1", "h2", "h3", "h4", "h5", "h6", "head", "header", "hgroup", "hr", "html",
+            "iframe", "img", "input", "isindex", "li", "link", "listing", "marquee", "menu", "meta", "nav", "noembed",
+            "noframes", "noscript", "object", "ol", "p", "param", "plaintext", "pre", "script", "section", "select",
+            "style", "summary", "table", "tbody", "td", "textarea", "tfoot", "th", "thead", "title", "tr", "ul", "wbr",
+            "xmp");
+
+    /**
+     * 格式标签，被外层标签关闭后，遇到文本时会重新打开
+     */
+    private static final Set<String> FORMATTING_TAGS = Set.of("a", "b", "big", "code", "em", "font", "i", "nobr",
+            "s", "small", "strike", "strong", "tt", "u");
+
+    /**
+     * 文档开头，只有空白的文本会被忽略
+     */
+    private static final int MODE_INITIAL = 0;
+    /**
+     * 已出现标签，但还未进入 body，结束标签会被忽略
+     */
+    private static final int MODE_BEFORE_BODY = 1;
+    private static final int MODE_BODY = 2;
+
+    /**
+     * <pre> 之后已经有节点或文本
+     */
+    private static final int PRE_NONE = 0;
+    /**
+     * <pre> 之后还没有生成节点，被忽略的标签不算
+     * 第一次解析的结果中 <pre> 后紧跟的换行（包括由 \n 字符串转成的）会在第二次解析时被忽略
+     */
+    private static final int PRE_START = 1;
+    /**
+     * 换行被忽略后剩下一个空字符，后面没有文本时第二次解析同样会忽略
+     */
+    private static final int PRE_NULL = 2;
+
+    /**
+     * 解析标签属性的状态
+     */
+    private static final int ATTR_BEFORE_NAME = 0;
+    private static final int ATTR_NAME = 1;
+    private static final int ATTR_AFTER_NAME = 2;
+    private static final int ATTR_BEFORE_VALUE = 3;
+    private static final int ATTR_UNQUOTED_VALUE = 4;
+    private static final int ATTR_AFTER_VALUE = 5;
+    private static final int ATTR_SELF_CLOSING = 6;
+
+    private final String html;
+    private final int length;
+    private final StringBuilder out;
+    /**
+     * 当前连续文本（两个标签之间）解析实体后的内容
+     */
+    private final StringBuilder text = new StringBuilder();
+    /**
+     * 已打开的标签，用于判断 </p> 是否有对应的 <p>
+     */
+    private final Deque<String> openTags = new ArrayDeque<>();
+    /**
+     * 被外层标签关闭、待重新打开的格式标签
+     */
+    private final List<String> reopenTags = new ArrayList<>();
+    private int pos;
+    private int mode = MODE_INITIAL;
+    /**
+     * 待输出的 \ 字符，和后面的 n 合并成换行
+     * 被忽略的标签不会输出，其前后的文本视为相邻
+     */
+    private boolean pendingBackslash;
+    private int preState = PRE_NONE;
+    /**
+     * 第二次解析时被忽略的换行，<pre> 的内容被移到新的格式标签中时，换行不再被忽略，需要补回
+     */
+    private final List<IgnoredNewline> ignoredNewlines = new ArrayList<>();
+    /**
+     * 当前标签是否以 /> 结束
+     */
+    private boolean selfClosing;
+
+    private HtmlTextConverter(String html) {
+        this.html = html;
+        this.length = html.length();
+        this.out = new StringBuilder(length);
+    }
+
+    public static String convert(String html) {
+        if (html == null || html.isEmpty()) {
+            return "";
+        }
+        return new HtmlTextConverter(html).parse();
+    }
+
+    private String parse() {
+        while (pos < length) {
+            char c = html.charAt(pos);
+            if (c == '<') {
+                parseMarkup();
+            } else if (c == '&') {
+                parseCharacterReference(length);
+            } else {
+                int end = pos + 1;
+                while (end < length && html.charAt(end) != '<' && html.charAt(end) != '&') {
+                    end++;
+                }
+                text.append(html, pos, end);
+                pos = end;
+            }
+        }
+        flushText(false);
+        flushBackslash();
+        return out.toString();
+    }
+
+    private void parseMarkup() {
+        int next = pos + 1;
+        char c = next < length ? html.charAt(next) : 0;
+        if (isAsciiLetter(c)) {
+            parseTag(next, false);
+        } else if (c == '/') {
+            char n = next + 1 < length ? html.charAt(next + 1) : 0;
+            if (isAsciiLetter(n)) {
+                parseTag(next + 1, true);
+            } else if (n == '>') {
+                // </> 直接忽略
+                flushText(false);
+                pos = next + 2;
+            } else if (next + 1 >= length) {
+                text.append("</");
+                pos = length;
+            } else {
+                skipBogusComment(next + 1, true);
+            }
+        } else if (c == '!') {
+            if (html.startsWith("--", next + 1)) {
+                skipComment(next + 3);
+            } else {
+                boolean doctype = html.regionMatches(true, next + 1, "DOCTYPE", 0, 7);
+                flushText(false);
+                if (doctype && mode == MODE_INITIAL) {
+                    mode = MODE_BEFORE_BODY;
+                }
+                // body 中的 DOCTYPE 会被忽略，不生成节点
+                skipBogusComment(next + 1, !doctype);
+            }
+        } else if (c == '?') {
+            skipBogusComment(next, true);
+        } else {
+            text.append('<');
+            pos = next;
+        }
+    }
+
+    private void parseTag(int nameStart, boolean endTag) {
+        int i = nameStart;
+        while (i < length && !isTagNameEnd(html.charAt(i)) && html.charAt(i) != '<') {
+            i++;
+        }
+        String name = html.substring(nameStart, i).toLowerCase(Locale.ROOT);
+        int tagEnd = skipAttributes(i);
+        if (tagEnd < 0) {
+            // 标签未闭合，丢弃剩余内容
+            flushText(false);
+            pos = length;
+            return;
+        }
+        // 标签名或属性名前出现 <，如 <b<p>，按 <b><p> 处理
+        pos = html.charAt(tagEnd) == '<' ? tagEnd : tagEnd + 1;
+        flushText(false);
+        mode = Math.max(mode, MODE_BEFORE_BODY);
+        if (endTag) {
+            handleEndTag(name);
+        } else {
+            handleStartTag(name);
+        }
+    }
+
+    /**
+     * 跳过标签属性，引号中的属性值可能有 >
+     *
+     * @return 标签结束的 > 或 < 的位置，标签未闭合返回 -1
+     */
+    private int skipAttributes(int start) {
+        int state = ATTR_BEFORE_NAME;
+        selfClosing = false;
+        for (int i = start; i < length; i++) {
+            char c = html.charAt(i);
+            switch (state) {
+                case ATTR_BEFORE_NAME:
+                    if (c == '>' || c == '<') {
+                        return i;
+                    } else if (c == '/') {
+                        state = ATTR_SELF_CLOSING;
+                    } else if (!isWhitespace(c)) {
+                        state = ATTR_NAME;
+                    }
+                    break;
+                case ATTR_NAME:
+                case ATTR_AFTER_NAME:
+                    if (c == '>') {
+                        return i;
+                    } else if (c == '/') {
+                        state = ATTR_SELF_CLOSING;
+                    } else if (c == '=') {
+                        state = ATTR_BEFORE_VALUE;
+                    } else {
+                        state = isWhitespace(c) ? ATTR_AFTER_NAME : ATTR_NAME;
+                    }
+                    break;
+                case ATTR_BEFORE_VALUE:
+                    if (c == '>') {
+                        return i;
+                    } else if (c == '"' || c == '\'') {
+                        int quoteEnd = html.indexOf(c, i + 1);
+                        if (quoteEnd < 0) {
+                            return -1;
+                        }
+                        i = quoteEnd;
+                        state = ATTR_AFTER_VALUE;
+                    } else if (!isWhitespace(c)) {
+                        state = ATTR_UNQUOTED_VALUE;
+                    }
+                    break;
+                case ATTR_UNQUOTED_VALUE:
+                    if (c == '>') {
+                        return i;
+                    } else if (isWhitespace(c)) {
+                        state = ATTR_BEFORE_NAME;
+                    }
+                    break;
+                default:
+                    // 引号属性值或 / 之后
+                    if (c == '>') {
+                        selfClosing = state == ATTR_SELF_CLOSING;
+                        return i;
+                    } else if (c == '/') {
+                        state = ATTR_SELF_CLOSING;
+                    } else {
+                        state = ATTR_BEFORE_NAME;
+                        if (!isWhitespace(c)) {
+                            i--;
+                        }
+                    }
+            }
+        }
+        return -1;
+    }
+
+    private void handleStartTag(String name) {
+        if (mode == MODE_BODY && ("html".equals(name) || "head".equals(name) || "body".equals(name))) {
+            // body 中的这些标签会被忽略
+            return;
+        }
+        if (inSelect() && !handleSelectStartTag(name)) {
+            return;
+        }
+        flushBackslash();
+        if ("a".equals(name)) {
+            // 未关闭的 <a> 会先被关闭
+            if (openTags.contains(name)) {
+                restorePreNewline(name);
+                openTags.remove(name);
+            }
+            reopenTags.remove(name);
+        }
+        preState = PRE_NONE;
+        mode = HEAD_TAGS.contains(name) ? Math.max(mode, MODE_BEFORE_BODY) : MODE_BODY;
+        if (CLOSE_P_TAGS.contains(name)) {
+            closeP();
+        }
+        if ("br".equals(name)) {
+            reopenFormattingTags();
+            out.append('\n');
+        } else if ("p".equals(name)) {
+            openTags.push(name);
+            out.append("\n\n");
+        } else if (RAW_TEXT_TAGS.contains(name) && !selfClosing) {
+            readRawText(name, !DATA_TAGS.contains(name), false);
+        } else if (RC_DATA_TAGS.contains(name) && !selfClosing) {
+            readRawText(name, true, true);
+        } else if ("pre".equals(name) || "listing".equals(name)) {
+            openTags.push(name);
+            // 第一次解析时紧跟 <pre> 的换行会被忽略
+            if (pos < length && html.charAt(pos) == '\n') {
+                pos++;
+            }
+            preState = PRE_START;
+            // 同一层级之前的 <pre> 已经关闭
+            ignoredNewlines.removeIf(newline -> newline.depth >= openTags.size());
+        } else {
+            if (!CLOSE_P_TAGS.contains(name)) {
+                reopenFormattingTags();
+            }
+            if (!VOID_TAGS.contains(name)) {
+                openTags.push(name);
+            }
+        }
+    }
+
+    private void handleEndTag(String name) {
+        if (mode != MODE_BODY) {
+            // 进入 body 前，除了 br body html 之外的结束标签都会被忽略
+            if (!"br".equals(name) && !"body".equals(name) && !"html".equals(name)) {
+                return;
+            }
+            mode = MODE_BODY;
+        }
+        if (inSelect()) {
+            handleSelectEndTag(name);
+        } else if ("br".equals(name)) {
+            // </br> 按 <br> 处理
+            flushBackslash();
+            preState = PRE_NONE;
+            reopenFormattingTags();
+            out.append('\n');
+        } else if ("p".equals(name)) {
+            flushBackslash();
+            preState = PRE_NONE;
+            if (!closeP()) {
+                // 没有对应的 <p>，会生成一个空的 <p></p>
+                out.append("\n\n");
+            }
+        } else {
+            boolean formatting = FORMATTING_TAGS.contains(name) && openTags.contains(name);
+            if (formatting) {
+                // 中间有块标签时会把块标签的内容包到新的格式标签中，<pre> 后不再紧跟文本
+                restorePreNewline(name);
+                preState = PRE_NONE;
+            }
+            if (closeTag(name)) {
+                flushBackslash();
+                preState = PRE_NONE;
+            } else if (formatting) {
+                // 格式标签最终仍会被关闭
+                openTags.remove(name);
+            }
+        }
+    }
+
+    /**
+     * <select> 中只处理 option、optgroup 等标签，其他标签会被忽略
+     *
+     * @return 是否还要按 body 中的标签处理
+     */
+    private boolean handleSelectStartTag(String name) {
+        switch (name) {
+            case "option":
+            case "optgroup":
+                flushBackslash();
+                popCurrent("option");
+                if ("optgroup".equals(name)) {
+                    popCurrent("optgroup");
+                }
+                openTags.push(name);
+                return false;
+            case "select":
+                // 按 </select> 处理
+                flushBackslash();
+                popUntil("select");
+                return false;
+            case "input":
+            case "keygen":
+            case "textarea":
+                // 先关闭 <select>
+                flushBackslash();
+                popUntil("select");
+                return true;
+            case "script":
+                flushBackslash();
+                if (!selfClosing) {
+                    readRawText(name, false, false);
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    private void handleSelectEndTag(String name) {
+        if ("optgroup".equals(name)) {
+            Iterator<String> iterator = openTags.iterator();
+            if ("option".equals(iterator.next()) && iterator.hasNext() && "optgroup".equals(iterator.next())) {
+                flushBackslash();
+                openTags.pop();
+            }
+            if (popCurrent(name)) {
+                flushBackslash();
+            }
+        } else if ("option".equals(name)) {
+            if (popCurrent(name)) {
+                flushBackslash();
+            }
+        } else if ("select".equals(name)) {
+            flushBackslash();
+            popUntil(name);
+        }
+    }
+
+    /**
+     * 格式标签与块标签交错时，格式标签之后的前 8 层特殊标签的内容会被依次移到新的格式标签中
+     * <pre> 在其中时，补回之前忽略的换行
+     */
+    private void restorePreNewline(String name) {
+        if (ignoredNewlines.isEmpty()) {
+            return;
+        }
+        String[] tags = openTags.toArray(new String[0]);
+        int formattingDepth = tags.length - Arrays.asList(tags).indexOf(name);
+        // 从后往前补，前面的位置不受影响
+        for (int i = ignoredNewlines.size() - 1; i >= 0; i--) {
+            IgnoredNewline newline = ignoredNewlines.get(i);
+            if (newline.depth <= formattingDepth || newline.depth > tags.length) {
+                continue;
+            }
+            String block = tags[tags.length - newline.depth];
+            int blocks = 0;
+            for (int depth = formattingDepth + 1; depth <= newline.depth; depth++) {
+                if (SPECIAL_TAGS.contains(tags[tags.length - depth])) {
+                    blocks++;
+                }
+            }
+            if (blocks <= 8 && ("pre".equals(block) || "listing".equals(block))) {
+                out.insert(newline.pos, newline.text);
+                ignoredNewlines.remove(i);
+            }
+        }
+    }
+
+    /**
+     * 当前标签是 name 时关闭
+     */
+    private boolean popCurrent(String name) {
+        if (name.equals(openTags.peek())) {
+            openTags.pop();
+            return true;
+        }
+        return false;
+    }
+
+    private boolean inSelect() {
+        return openTags.contains("select");
+    }
+
+    /**
+     * 关闭已打开的标签
+     *
+     * @return 是否有对应的开始标签，没有则结束标签被忽略
+     */
+    private boolean closeTag(String name) {
+        if ("body".equals(name) || "html".equals(name) || reopenTags.remove(name)) {
+            return false;
+        }
+        boolean special = SPECIAL_TAGS.contains(name);
+        for (String tag : openTags) {
+            if (tag.equals(name)) {
+                popUntil(name);
+                return true;
+            }
+            if (special ? SCOPE_TAGS.contains(tag) : SPECIAL_TAGS.contains(tag)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 关闭作用域内打开的 <p>
+     *
+     * @return 是否有打开的 <p>
+     */
+    private boolean closeP() {
+        for (String tag : openTags) {
+            if ("p".equals(tag)) {
+                popUntil(tag);
+                return true;
+            }
+            if ("button".equals(tag) || SCOPE_TAGS.contains(tag)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private void popUntil(String name) {
+        Iterator<String> iterator = openTags.iterator();
+        while (iterator.hasNext()) {
+            String tag = iterator.next();
+            iterator.remove();
+            if (tag.equals(name)) {
+                return;
+            }
+            if (FORMATTING_TAGS.contains(tag)) {
+                reopenTags.add(0, tag);
+            }
+        }
+    }
+
+    private void reopenFormattingTags() {
+        if (!reopenTags.isEmpty()) {
+            // 重新打开的格式标签在文本之前
+            preState = PRE_NONE;
+        }
+        for (String tag : reopenTags) {
+            openTags.push(tag);
+        }
+        reopenTags.clear();
+    }
+
+    /**
+     * 读取 script、style、textarea 等标签的内容
+     *
+     * @param name         标签名
+     * @param keep         是否保留内容
+     * @param decodeEntity 是否解析实体
+     */
+    private void readRawText(String name, boolean keep, boolean decodeEntity) {
+        int end = findEndTag(name);
+        if (keep) {
+            while (pos < end) {
+                if (decodeEntity && html.charAt(pos) == '&') {
+                    parseCharacterReference(end);
+                } else {
+                    char c = html.charAt(pos++);
+                    text.append(c == 0 ? '\uFFFD' : c);
+                }
+            }
+            flushText(true);
+        }
+        if (end < length) {
+            flushBackslash();
+            int close = html.indexOf('>', end);
+            pos = close < 0 ? length : close + 1;
+        } else {
+            pos = length;
+        }
+    }
+
+    private int findEndTag(String name) {
+        int i = pos;
+        while ((i = html.indexOf("</", i)) >= 0) {
+            int nameEnd = i + 2 + name.length();
+            if (html.regionMatches(true, i + 2, name, 0, name.length())
+                    && (nameEnd >= length || isTagNameEnd(html.charAt(nameEnd)))) {
+                return i;
+            }
+            i += 2;
+        }
+        return length;
+    }
+
+    private void skipComment(int start) {
+        flushText(false);
+        if (html.startsWith(">", start)) {
+            // <!--> 空注释
+            pos = start + 1;
+        } else if (html.startsWith("->", start)) {
+            // <!---> 空注释
+            pos = start + 2;
+        } else {
+            int end = html.indexOf("--", start);
+            while (end >= 0 && !html.startsWith(">", end + 2) && !html.startsWith("!>", end + 2)) {
+                end = html.indexOf("--", end + 1);
+            }
+            pos = end < 0 ? length : html.indexOf('>', end) + 1;
+        }
+        flushBackslash();
+        preState = PRE_NONE;
+    }
+
+    /**
+     * 跳过 <? <! </ 开头的非法标签，按注释处理
+     *
+     * @param comment 是否生成注释节点
+     */
+    private void skipBogusComment(int start, boolean comment) {
+        flushText(false);
+        int end = html.indexOf('>', start);
+        pos = end < 0 ? length : end + 1;
+        if (comment) {
+            flushBackslash();
+            preState = PRE_NONE;
+        }
+    }
+
+    /**
+     * 解析 &amp; &#38; &#x26; 等字符引用，无法解析时 & 按文本处理
+     */
+    private void parseCharacterReference(int limit) {
+        int i = pos + 1;
+        if (i < limit && html.charAt(i) == '#') {
+            i++;
+            boolean hex = i < limit && (html.charAt(i) == 'x' || html.charAt(i) == 'X');
+            if (hex) {
+                i++;
+            }
+            int digitStart = i;
+            while (i < limit && (hex ? isAsciiHexDigit(html.charAt(i)) : isAsciiDigit(html.charAt(i)))) {
+                i++;
+            }
+            if (i == digitStart) {
+                text.append('&');
+                pos++;
+                return;
+            }
+            int codePoint;
+            try {
+                codePoint = Integer.parseInt(html.substring(digitStart, i), hex ? 16 : 10);
+            } catch (NumberFormatException e) {
+                codePoint = -1;
+            }
+            if (i < limit && html.charAt(i) == ';') {
+                i++;
+            }
+            if (codePoint < 0 || (codePoint >= 0xD800 && codePoint <= 0xDFFF) || codePoint > 0x10FFFF) {
+                codePoint = 0xFFFD;
+            } else if (codePoint >= 0x80 && codePoint < 0x80 + WIN_1252_EXTENSIONS.length) {
+                codePoint = WIN_1252_EXTENSIONS[codePoint - 0x80];
+            }
+            text.appendCodePoint(codePoint);
+            pos = i;
+            return;
+        }
+        int nameStart = i;
+        while (i < limit && Character.isLetter(html.charAt(i))) {
+            i++;
+        }
+        while (i < limit && isAsciiDigit(html.charAt(i))) {
+            i++;
+        }
+        String name = html.substring(nameStart, i);
+        boolean semicolon = i < limit && html.charAt(i) == ';';
+        // 常用实体可以省略分号
+        if (i == nameStart || !(Entities.isBaseNamedEntity(name) || (semicolon && Entities.isNamedEntity(name)))) {
+            text.append('&');
+            pos++;
+            return;
+        }
+        text.append(Entities.getByName(name));
+        pos = semicolon ? i + 1 : i;
+    }
+
+    /**
+     * 输出当前连续文本
+     *
+     * @param rcData 是否为 textarea、title 等标签中的文本
+     */
+    private void flushText(boolean rcData) {
+        if (text.length() == 0) {
+            return;
+        }
+        if (mode == MODE_INITIAL && isBlank(text)) {
+            // 文档开头的空白会被忽略
+            text.setLength(0);
+            return;
+        }
+        if (!rcData && !isBlank(text)) {
+            mode = MODE_BODY;
+        }
+        if (!rcData && text.length() == 1 && text.charAt(0) == 0) {
+            // 单独的空字符会被忽略
+            text.setLength(0);
+            return;
+        }
+        if (mode == MODE_BODY && !rcData && !inSelect()) {
+            reopenFormattingTags();
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (preState == PRE_NULL) {
+                // 后面还有文本，空字符不会被忽略
+                out.append("&#x0;");
+                preState = PRE_NONE;
+                ignoredNewlines.get(ignoredNewlines.size() - 1).text = "\n";
+            }
+            if (pendingBackslash) {
+                pendingBackslash = false;
+                if (c == 'n') {
+                    if (preState == PRE_START) {
+                        i = ignorePreNewline(i);
+                    } else {
+                        out.append('\n');
+                    }
+                    continue;
+                }
+                out.append('\\');
+                preState = PRE_NONE;
+            }
+            if (preState == PRE_START && c != '\\') {
+                if (c == '\n') {
+                    i = ignorePreNewline(i);
+                    continue;
+                }
+                preState = PRE_NONE;
+            }
+            switch (c) {
+                case '\\':
+                    pendingBackslash = true;
+                    break;
+                case '&':
+                    out.append("&amp;");
+                    break;
+                case '<':
+                    out.append("&lt;");
+                    break;
+                case '>':
+                    out.append("&gt;");
+                    break;
+                case '\u00A0':
+                    // &nbsp; 去掉
+                    break;
+                case '\t':
+                case '\n':
+                case '\r':
+                    out.append(c);
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append("&#x").append(Integer.toHexString(c)).append(';');
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        text.setLength(0);
+    }
+
+    /**
+     * 忽略 <pre> 后紧跟的换行，换行后只剩一个空字符时先不输出
+     *
+     * @return 最后一个被忽略的字符的位置
+     */
+    private int ignorePreNewline(int i) {
+        boolean nullOnly = i == text.length() - 2 && text.charAt(i + 1) == 0;
+        ignoredNewlines.add(new IgnoredNewline(out.length(), openTags.size(), nullOnly ? "\n&#x0;" : "\n"));
+        preState = nullOnly ? PRE_NULL : PRE_NONE;
+        return nullOnly ? i + 1 : i;
+    }
+
+    private void flushBackslash() {
+        if (pendingBackslash) {
+            out.append('\\');
+            pendingBackslash = false;
+            preState = PRE_NONE;
+        }
+    }
+
+    private static boolean isBlank(CharSequence chars) {
+        for (int i = 0; i < chars.length(); i++) {
+            if (!isWhitespace(chars.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isTagNameEnd(char c) {
+        return isWhitespace(c) || c == '/' || c == '>';
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isAsciiDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isAsciiHexDigit(char c) {
+        return isAsciiDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    private static class IgnoredNewline {
+        /**
+         * 在输出中的位置
+         */
+        private final int pos;
+        /**
+         * 所在 <pre> 的层级
+         */
+        private final int depth;
+        /**
+         * 补回的内容
+         */
+        private String text;
+
+        private IgnoredNewline(int pos, int depth, String text) {
+            this.pos = pos;
+            this.depth = depth;
+            this.text = text;
+        }
+    }
+
+    /**
+     * &#128; - &#159; 按 windows-1252 解析
+     */
+    private static final int[] WIN_1252_EXTENSIONS = {
+            0x20AC, 0x0081, 0x201A, 0x0192, 0x201E, 0x2026, 0x2020, 0x2021,
+            0x02C6, 0x2030, 0x0160, 0x2039, 0x0152, 0x008D, 0x017D, 0x008F,
+            0x0090, 0x2018, 0x2019, 0x201C, 0x201D, 0x2022, 0x2013, 0x2014,
+            0x02DC, 0x2122, 0x0161, 0x203A, 0x0153, 0x009D, 0x017E, 0x0178,
+    };
+}
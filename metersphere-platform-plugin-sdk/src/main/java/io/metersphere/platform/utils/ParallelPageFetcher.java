@@ -0,0 +1,160 @@
+package io.metersphere.platform.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * 已知总页数时并发查询后续的页，按页码顺序返回
+ * 同时最多查询 parallelism 页，调用方取走一页后才会查询下一页，不会一次加载全部数据
+ * 可作为 SyncPipeline 的查询阶段，使用完需要调用 close 结束线程
+ *
+ * @param <P> 一页数据
+ */
+public class ParallelPageFetcher<P> implements Supplier<P>, AutoCloseable {
+
+    private final int lastPage;
+    private final int parallelism;
+    private final IntFunction<P> pageLoader;
+    private final Queue<Future<P>> loading = new ArrayDeque<>();
+    private final ExecutorService executor;
+    private int nextPage;
+    private volatile boolean closed;
+
+    /**
+     * @param firstPage   第一个查询的页码
+     * @param lastPage    最后一个查询的页码（包含）
+     * @param parallelism 最多同时查询的页数
+     * @param pageLoader  按页码查询一页数据
+     */
+    public ParallelPageFetcher(int firstPage, int lastPage, int parallelism, IntFunction<P> pageLoader) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.nextPage = firstPage;
+        this.lastPage = lastPage;
+        this.parallelism = parallelism;
+        this.pageLoader = pageLoader;
+        this.executor = newExecutor(parallelism);
+    }
+
+    /**
+     * 创建最多 parallelism 个线程的线程池，线程使用当前的上下文类加载器
+     * 多次调用 map 时共用，使用完由调用方调用 shutdownNow 结束线程
+     */
+    public static ExecutorService newExecutor(int parallelism) {
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        AtomicInteger threadNum = new AtomicInteger();
+        return Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "sync-page-" + threadNum.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setContextClassLoader(contextClassLoader);
+            return thread;
+        });
+    }
+
+    /**
+     * 并发处理列表中的每一项，同时最多处理 parallelism 项，按原顺序返回结果
+     */
+    public static <T, R> List<R> map(List<T> items, int parallelism, Function<T, R> mapper) {
+        List<R> results = new ArrayList<>(items.size());
+        if (items.isEmpty()) {
+            return results;
+        }
+        try (ParallelPageFetcher<R> fetcher = new ParallelPageFetcher<>(0, items.size() - 1,
+                Math.min(parallelism, items.size()), i -> mapper.apply(items.get(i)))) {
+            // 结果可能为 null，按数量获取
+            for (int i = 0; i < items.size(); i++) {
+                results.add(fetcher.get());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 使用调用方的线程池并发处理列表中的每一项，按原顺序返回结果
+     * 某一项失败时取消其他未完成的项，抛出失败的异常
+     */
+    public static <T, R> List<R> map(List<T> items, ExecutorService executor, Function<T, R> mapper) {
+        List<Future<R>> futures = new ArrayList<>(items.size());
+        List<R> results = new ArrayList<>(items.size());
+        try {
+            for (T item : items) {
+                futures.add(executor.submit(() -> mapper.apply(item)));
+            }
+            for (Future<R> future : futures) {
+                results.add(await(future));
+            }
+        } finally {
+            // 全部完成时不影响结果
+            futures.forEach(future -> future.cancel(true));
+        }
+        return results;
+    }
+
+    /**
+     * 只能在一个线程中调用
+     *
+     * @return 下一页数据，没有更多页或已关闭时返回 null
+     */
+    @Override
+    public P get() {
+        if (closed) {
+            return null;
+        }
+        while (nextPage <= lastPage && loading.size() < parallelism) {
+            int pageNum = nextPage++;
+            loading.add(executor.submit(() -> pageLoader.apply(pageNum)));
+        }
+        Future<P> future = loading.poll();
+        if (future == null) {
+            close();
+            return null;
+        }
+        try {
+            return await(future);
+        } catch (CancellationException e) {
+            // 其他线程调用了 close
+            return null;
+        } catch (RuntimeException | Error e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * 可以在其他线程中调用，未开始的查询不再执行，正在查询的线程会被中断
+     */
+    @Override
+    public void close() {
+        closed = true;
+        executor.shutdownNow().forEach(task -> ((Future<?>) task).cancel(false));
+    }
+
+    /**
+     * 等待结果，任务抛出的异常原样抛出
+     */
+    private static <R> R await(Future<R> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package io.metersphere.platform.utils;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * 前缀索引，用于在本地按名称、账号、邮箱等前缀搜索下拉框选项
+ * 每段文本整体以及其中的每个单词都会建立索引，不区分大小写
+ * 搜索结果按添加顺序返回，每个前缀记录最先添加的 MAX_NODE_IDS 个数据，limit 不超过时不用遍历子节点
+ *
+ * @param <T> 索引的数据
+ */
+public class PrefixIndex<T> {
+
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("[\\s@._\\-()]+");
+    /**
+     * 每个前缀记录的数据数量上限
+     */
+    private static final int MAX_NODE_IDS = 200;
+
+    private final Node root = new Node();
+    private final List<T> items = new ArrayList<>();
+
+    /**
+     * @param texts 用于搜索的文本，为空的忽略
+     */
+    public synchronized void add(T item, String... texts) {
+        int id = items.size();
+        items.add(item);
+        for (String text : texts) {
+            if (StringUtils.isBlank(text)) {
+                continue;
+            }
+            String normalized = normalize(text);
+            index(normalized, id);
+            for (String word : WORD_SEPARATOR.split(normalized)) {
+                if (!word.isEmpty() && !word.equals(normalized)) {
+                    index(word, id);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param prefix 搜索的前缀，为空时按添加顺序返回
+     * @param limit  最多返回的数量
+     */
+    public synchronized List<T> search(String prefix, int limit) {
+        List<T> result = new ArrayList<>();
+        if (StringUtils.isBlank(prefix)) {
+            for (int i = 0; i < items.size() && result.size() < limit; i++) {
+                result.add(items.get(i));
+            }
+            return result;
+        }
+        Node node = root;
+        String normalized = normalize(prefix);
+        for (int i = 0; i < normalized.length() && node != null; i++) {
+            node = node.children == null ? null : node.children.get(normalized.charAt(i));
+        }
+        if (node == null) {
+            return result;
+        }
+        Collection<Integer> ids = node.firstIds;
+        if (limit > ids.size() && ids.size() >= MAX_NODE_IDS) {
+            // 超出记录的数量，遍历所有子节点；同一数据可能通过多个单词匹配，按添加顺序去重
+            TreeSet<Integer> allIds = new TreeSet<>();
+            collect(node, allIds);
+            ids = allIds;
+        }
+        for (Integer id : ids) {
+            if (result.size() >= limit) {
+                break;
+            }
+            result.add(items.get(id));
+        }
+        return result;
+    }
+
+    public synchronized int size() {
+        return items.size();
+    }
+
+    private void index(String word, int id) {
+        Node node = root;
+        for (int i = 0; i < word.length(); i++) {
+            if (node.children == null) {
+                node.children = new HashMap<>(4);
+            }
+            node = node.children.computeIfAbsent(word.charAt(i), c -> new Node());
+            node.addFirstId(id);
+        }
+        if (node.ids == null) {
+            node.ids = new ArrayList<>(1);
+        }
+        node.ids.add(id);
+    }
+
+    private void collect(Node node, Set<Integer> ids) {
+        // 单词较长时递归层数较多，使用栈遍历
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            Node current = stack.pop();
+            if (current.ids != null) {
+                ids.addAll(current.ids);
+            }
+            if (current.children != null) {
+                current.children.values().forEach(stack::push);
+            }
+        }
+    }
+
+    private String normalize(String text) {
+        return text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static class Node {
+        private Map<Character, Node> children;
+        private List<Integer> ids;
+        /**
+         * 以该节点为前缀的数据中最先添加的，按添加顺序排列，不重复
+         */
+        private final List<Integer> firstIds = new ArrayList<>(1);
+
+        private void addFirstId(int id) {
+            // id 递增，同一数据的多个单词连续添加，和最后一个比较即可去重
+            if (firstIds.size() < MAX_NODE_IDS && (firstIds.isEmpty() || firstIds.get(firstIds.size() - 1) != id)) {
+                firstIds.add(id);
+            }
+        }
+    }
+}
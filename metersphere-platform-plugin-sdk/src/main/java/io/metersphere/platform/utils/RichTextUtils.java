@@ -0,0 +1,90 @@
+package io.metersphere.platform.utils;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 富文本（markdown/html）内容转换工具
+ * 图片、链接等格式转换统一在这里单次扫描完成，避免 replaceFirst 后从头重新匹配
+ */
+public class RichTextUtils {
+
+    /**
+     * markdown 图片 ![name](path)，group(2) 为路径
+     */
+    public static final Pattern MARKDOWN_IMAGE_PATTERN = Pattern.compile("(\\!\\[.*?\\]\\((.*?)\\))");
+
+    /**
+     * html 图片 <img src="path" ...>，group(2) 为路径
+     */
+    public static final Pattern HTML_IMAGE_PATTERN = Pattern.compile("(<img\\s*src=\\\"(.*?)\\\".*?>)");
+
+    /**
+     * 单次扫描替换所有匹配内容
+     * 与 Matcher.replaceAll 不同，替换内容按原文追加，不解析其中的 $ 和 \
+     *
+     * @param input    原文
+     * @param pattern  预编译的正则
+     * @param replacer 返回匹配内容的替换值，返回 null 则保留原内容
+     * @return 替换后的内容
+     */
+    public static String replace(String input, Pattern pattern, Function<Matcher, String> replacer) {
+        if (input == null || input.isEmpty()) {
+            return input;
+        }
+        Matcher matcher = pattern.matcher(input);
+        if (!matcher.find()) {
+            return input;
+        }
+        StringBuilder result = new StringBuilder(input.length() + 64);
+        int last = 0;
+        do {
+            String replacement = replacer.apply(matcher);
+            if (replacement != null) {
+                result.append(input, last, matcher.start()).append(replacement);
+                last = matcher.end();
+            }
+        } while (matcher.find());
+        return result.append(input, last, input.length()).toString();
+    }
+
+    /**
+     * 按顺序依次将全文中的 key 替换成 value，结果与依次调用 String.replace 相同，
+     * 不同的是只扫描一次原文，已被替换的位置不会再被后面的 key 匹配
+     *
+     * @param input        原文
+     * @param replacements 有序的替换内容
+     * @return 替换后的内容
+     */
+    public static String replaceAll(String input, Map<String, String> replacements) {
+        if (input == null || input.isEmpty() || replacements.isEmpty()) {
+            return input;
+        }
+        AhoCorasickMatcher matcher = new AhoCorasickMatcher(replacements.keySet());
+        List<String> keywords = matcher.getKeywords();
+        List<AhoCorasickMatcher.Match> matches = matcher.findAll(input);
+        // 按 key 的顺序处理，同一个 key 从左到右不重叠
+        matches.sort(Comparator.comparingInt(AhoCorasickMatcher.Match::getKeyword));
+        TreeMap<Integer, AhoCorasickMatcher.Match> replaced = new TreeMap<>();
+        for (AhoCorasickMatcher.Match match : matches) {
+            Map.Entry<Integer, AhoCorasickMatcher.Match> before = replaced.floorEntry(match.getStart());
+            Map.Entry<Integer, AhoCorasickMatcher.Match> after = replaced.ceilingEntry(match.getStart());
+            if ((before == null || before.getValue().getEnd() <= match.getStart())
+                    && (after == null || after.getKey() >= match.getEnd())) {
+                replaced.put(match.getStart(), match);
+            }
+        }
+        StringBuilder result = new StringBuilder(input.length() + 64);
+        int last = 0;
+        for (AhoCorasickMatcher.Match match : replaced.values()) {
+            result.append(input, last, match.getStart()).append(replacements.get(keywords.get(match.getKeyword())));
+            last = match.getEnd();
+        }
+        return result.append(input, last, input.length()).toString();
+    }
+}
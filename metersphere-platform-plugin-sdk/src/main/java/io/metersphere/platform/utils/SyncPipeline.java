@@ -0,0 +1,138 @@
+package io.metersphere.platform.utils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 同步缺陷的流水线，查询、转换、回调三个阶段并行执行
+ * 阶段之间用有界队列连接，下游处理不过来时上游阻塞等待，最多预取 capacity 页
+ * 查询和转换在单独的线程中按页顺序执行，回调在调用线程中按页顺序执行
+ *
+ * @param <P> 查询到的一页数据
+ * @param <R> 转换后的一页数据
+ */
+public class SyncPipeline<P, R> {
+
+    public static final int DEFAULT_CAPACITY = 2;
+
+    private static final Object END = new Object();
+
+    private final int capacity;
+    private final Supplier<P> fetcher;
+    private final Function<P, R> converter;
+    private final Consumer<R> consumer;
+    private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+    /**
+     * @param fetcher   依次查询每一页，返回 null 表示没有更多数据
+     * @param converter 转换一页数据
+     * @param consumer  处理转换后的数据，在调用 run 的线程中执行
+     */
+    public SyncPipeline(Supplier<P> fetcher, Function<P, R> converter, Consumer<R> consumer) {
+        this(DEFAULT_CAPACITY, fetcher, converter, consumer);
+    }
+
+    public SyncPipeline(int capacity, Supplier<P> fetcher, Function<P, R> converter, Consumer<R> consumer) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.fetcher = fetcher;
+        this.converter = converter;
+        this.consumer = consumer;
+    }
+
+    /**
+     * 执行到所有数据处理完成，任一阶段出错时停止其他阶段，并抛出该异常
+     */
+    @SuppressWarnings("unchecked")
+    public void run() {
+        BlockingQueue<Object> fetched = new ArrayBlockingQueue<>(capacity);
+        BlockingQueue<Object> converted = new ArrayBlockingQueue<>(capacity);
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+
+        Thread fetchThread = newThread("sync-fetch", contextClassLoader, () -> {
+            try {
+                P page;
+                while (error.get() == null && (page = fetcher.get()) != null) {
+                    fetched.put(page);
+                }
+            } catch (InterruptedException e) {
+                // 调用线程已经结束，不需要再通知下游
+                return;
+            } catch (Throwable t) {
+                error.compareAndSet(null, t);
+            }
+            putEnd(fetched);
+        });
+        Thread convertThread = newThread("sync-convert", contextClassLoader, () -> {
+            try {
+                Object page;
+                while ((page = fetched.take()) != END) {
+                    if (error.get() == null) {
+                        converted.put(converter.apply((P) page));
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Throwable t) {
+                error.compareAndSet(null, t);
+            }
+            putEnd(converted);
+        });
+
+        fetchThread.start();
+        convertThread.start();
+        try {
+            Object result;
+            while ((result = converted.take()) != END) {
+                if (error.get() == null) {
+                    consumer.accept((R) result);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error.compareAndSet(null, e);
+        } catch (Throwable t) {
+            error.compareAndSet(null, t);
+        } finally {
+            // 正常结束时线程已退出，出错时中断阻塞在队列上的线程
+            fetchThread.interrupt();
+            convertThread.interrupt();
+        }
+
+        Throwable t = error.get();
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        if (t != null) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    /**
+     * 通知下游结束，调用线程退出时会中断当前线程，不会一直阻塞
+     */
+    private void putEnd(BlockingQueue<Object> queue) {
+        try {
+            queue.put(END);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Thread newThread(String name, ClassLoader contextClassLoader, Runnable runnable) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        // 转换时可能通过上下文类加载器加载插件中的类
+        thread.setContextClassLoader(contextClassLoader);
+        return thread;
+    }
+}
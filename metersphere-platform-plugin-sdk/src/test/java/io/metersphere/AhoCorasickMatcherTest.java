@@ -0,0 +1,166 @@
+package io.metersphere;
+
+import io.metersphere.platform.utils.AhoCorasickMatcher;
+import io.metersphere.platform.utils.RichTextUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class AhoCorasickMatcherTest {
+
+    @Test
+    public void matchOverlappingKeywords() {
+        AhoCorasickMatcher matcher = new AhoCorasickMatcher(Arrays.asList("he", "she", "his", "hers", "x"));
+        BitSet matched = matcher.match("ushers");
+        Assert.assertEquals(bits(0, 1, 3), matched);
+        // 只匹配指定范围
+        Assert.assertEquals(bits(0), matcher.match("ushers", 2, 4));
+        Assert.assertEquals(bits(), matcher.match("ushers", 3, 3));
+    }
+
+    @Test
+    public void matchNestedKeywords() {
+        AhoCorasickMatcher matcher = new AhoCorasickMatcher(Arrays.asList("a.png", "1a.png", "png", "b.png"));
+        Assert.assertEquals(bits(0, 1, 2), matcher.match("![](/file/1a.png)"));
+        Assert.assertEquals(bits(2), matcher.match("apng png"));
+    }
+
+    @Test
+    public void duplicateKeywords() {
+        AhoCorasickMatcher matcher = new AhoCorasickMatcher(Arrays.asList("ab", "b", "ab"));
+        // 重复的关键字只记录第一个
+        Assert.assertEquals(bits(0, 1), matcher.match("xab"));
+        List<AhoCorasickMatcher.Match> matches = matcher.findAll("xab");
+        Assert.assertEquals(Arrays.asList("1-3-0", "2-3-1"), describe(matches));
+    }
+
+    @Test
+    public void emptyKeyword() {
+        AhoCorasickMatcher matcher = new AhoCorasickMatcher(Arrays.asList("a", "", ""));
+        // 任何非空文本都包含空字符串
+        Assert.assertEquals(bits(1), matcher.match("b"));
+        Assert.assertEquals(bits(0, 1), matcher.match("a"));
+        Assert.assertEquals(bits(), matcher.match(""));
+        // findAll 不返回空字符串
+        Assert.assertEquals(Collections.singletonList("0-1-0"), describe(matcher.findAll("a")));
+
+        Assert.assertEquals(bits(), new AhoCorasickMatcher(Collections.emptyList()).match("a"));
+    }
+
+    @Test
+    public void findAllOrder() {
+        AhoCorasickMatcher matcher = new AhoCorasickMatcher(Arrays.asList("bc", "abc", "b", "c", "abcd"));
+        // 按开始位置排序，开始位置相同按关键字下标排序
+        Assert.assertEquals(Arrays.asList("0-3-1", "0-4-4", "1-3-0", "1-2-2", "2-3-3"),
+                describe(matcher.findAll("abcd")));
+    }
+
+    /**
+     * 随机关键字和文本，与逐个关键字 indexOf 的结果比较
+     */
+    @Test
+    public void matchRandom() {
+        Random random = new Random(20230301);
+        for (int i = 0; i < 2000; i++) {
+            List<String> keywords = new ArrayList<>();
+            int count = random.nextInt(8);
+            for (int j = 0; j < count; j++) {
+                keywords.add(randomText(random, "abc", 4));
+            }
+            String text = randomText(random, "abc", 30);
+            AhoCorasickMatcher matcher = new AhoCorasickMatcher(keywords);
+
+            BitSet expected = new BitSet();
+            List<String> expectedMatches = new ArrayList<>();
+            for (int start = 0; start < text.length(); start++) {
+                for (int k = 0; k < keywords.size(); k++) {
+                    String keyword = keywords.get(k);
+                    if (!keyword.isEmpty() && keywords.indexOf(keyword) == k && text.startsWith(keyword, start)) {
+                        expectedMatches.add(start + "-" + (start + keyword.length()) + "-" + k);
+                    }
+                }
+            }
+            for (int k = 0; k < keywords.size(); k++) {
+                if (keywords.indexOf(keywords.get(k)) == k && !text.isEmpty() && text.contains(keywords.get(k))) {
+                    expected.set(k);
+                }
+            }
+            String message = keywords + " " + text;
+            Assert.assertEquals(message, expected, matcher.match(text));
+            Assert.assertEquals(message, expectedMatches, describe(matcher.findAll(text)));
+        }
+    }
+
+    @Test
+    public void replaceAll() {
+        Map<String, String> replacements = new LinkedHashMap<>();
+        replacements.put("aa", "X");
+        replacements.put("a", "Y");
+        // 同一个 key 从左到右不重叠
+        Assert.assertEquals("XXY", RichTextUtils.replaceAll("aaaaa", replacements));
+
+        replacements = new LinkedHashMap<>();
+        replacements.put("b", "ab");
+        replacements.put("a", "c");
+        // 替换后的内容不会再被后面的 key 匹配
+        Assert.assertEquals("abc", RichTextUtils.replaceAll("ba", replacements));
+        Assert.assertEquals("", RichTextUtils.replaceAll("", replacements));
+        Assert.assertNull(RichTextUtils.replaceAll(null, replacements));
+        Assert.assertEquals("ba", RichTextUtils.replaceAll("ba", Collections.emptyMap()));
+    }
+
+    /**
+     * 替换内容不包含关键字时，结果与按顺序调用 String.replace 相同
+     */
+    @Test
+    public void replaceAllRandom() {
+        Random random = new Random(20230302);
+        for (int i = 0; i < 2000; i++) {
+            Map<String, String> replacements = new LinkedHashMap<>();
+            int count = random.nextInt(6);
+            for (int j = 0; j < count; j++) {
+                String key = randomText(random, "abc", 4);
+                if (!key.isEmpty()) {
+                    replacements.put(key, "[" + randomText(random, "XYZ", 3) + "]");
+                }
+            }
+            String text = randomText(random, "abc", 30);
+            String expected = text;
+            for (Map.Entry<String, String> entry : replacements.entrySet()) {
+                expected = expected.replace(entry.getKey(), entry.getValue());
+            }
+            Assert.assertEquals(replacements + " " + text, expected, RichTextUtils.replaceAll(text, replacements));
+        }
+    }
+
+    private static String randomText(Random random, String alphabet, int maxLength) {
+        int length = random.nextInt(maxLength + 1);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return text.toString();
+    }
+
+    private static BitSet bits(int... indexes) {
+        BitSet bits = new BitSet();
+        for (int index : indexes) {
+            bits.set(index);
+        }
+        return bits;
+    }
+
+    private static List<String> describe(List<AhoCorasickMatcher.Match> matches) {
+        List<String> result = new ArrayList<>();
+        matches.forEach(match -> result.add(match.getStart() + "-" + match.getEnd() + "-" + match.getKeyword()));
+        return result;
+    }
+}
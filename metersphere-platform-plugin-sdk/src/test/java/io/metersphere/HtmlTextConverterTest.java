@@ -0,0 +1,131 @@
+package io.metersphere;
+
+import io.metersphere.platform.utils.HtmlTextConverter;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.safety.Safelist;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+public class HtmlTextConverterTest {
+
+    private static final String[] CORPUS = {
+            "",
+            "纯文本",
+            "<p>第一段</p><p>第二段</p>",
+            "<p>步骤1：打开页面<br>步骤2：点击<br/>按钮</br>结束</p>",
+            "<p style=\"text-align:center\"><strong>加粗</strong>&nbsp;<em>斜体</em>&nbsp;<u>下划线</u></p>",
+            "<ol><li>预期 &lt;成功&gt;</li><li>a &amp; b &quot;c&quot; &#39;d&#39;</li></ol>",
+            "<a href=\"http://example.com?a=1&b=2\">链接</a> &copy &reg; &hellip; &#x80; &#128512; &foo; &amp",
+            "<div><p>a<div>b</p>c</div></p>",
+            "<span><p>x</span>y</p>z",
+            "<p><button></p>x",
+            "<table><tr><td><p>单元格</td></tr></table>",
+            "<script>alert('<p>')</script><style>p{}</style><!-- 注释 --><?xml?>正文",
+            "<title>T</title> <textarea>&lt;x\n</textarea>",
+            "<pre>\n\ncode\n</pre><p>a\\nb</p>a\\</x>n",
+            "  \n <p>  前后空白  </p> \n ",
+            "<b<p>x</b> <img src=\"/resource/md/get/a_b.png\"/> <b x=\"1\"<p>y",
+            "a<b\n<pre>\n\nz</pre>",
+            "&#0;<p>&#0;a\u0000b\u0001</p>",
+            "未闭合 <p>标签 <b",
+            "<pre>\\nx</pre><pre>\n\\nx</pre><pre>\\n\\nx</pre><pre></h1>\n\nx</pre><pre>\n</h1>\n\n</pre>",
+            "<pre>\n<a href='x'>", "<b><p>x</b><pre>\n\ny</pre>", "<pre><!-- c -->\nx<!DOCTYPE html>\\</pre>",
+            "<select><option>a</option>b<p>c</select>d", "<select><b>x</b><br><optgroup><option>y<select>z",
+    };
+
+    /**
+     * 标签属性名中的 \n 字符串，转换时不处理
+     */
+    private static final Pattern ATTRIBUTE_NEWLINE = Pattern.compile("<[a-zA-Z][^<>]*\\\\n");
+
+    private static final String[] FRAGMENTS = {
+            "<p>", "</p>", "<br>", "<br/>", "</br>", "<div>", "</div>", "<span style=\"a>b\">", "</span>",
+            "<strong>", "</strong>", "<em>", "</em>", "<ul><li>", "</li></ul>", "<h1>", "</h1>", "<pre>\n\nz</pre>",
+            "<button><p>q</button>", "<textarea>&lt;x</textarea>", "<title>T</title>", "<script>x<p>y</script>",
+            "<!-- c -->", "<!x>", "<?x?>", "<", ">", "a<b", "\\", "\\n", "n", " ", "\n", "\t", "中文",
+            "&amp;", "&lt;", "&nbsp;", "&copy", "&hellip;", "&#65;", "&#x80;", "&#0;", "&foo;", "&notin;",
+            "<table><tr><td>t</td></tr></table>", "<img src=\"x\">", "<a href='u'>l</a>", "<a href='x'>", "</a>",
+            "<pre>", "<pre>\n", "<pre>\\n", "<pre></h1>", "</pre>", "<listing>\n", "<!DOCTYPE html>",
+            "<textarea>\nx</textarea>", "<select>", "</select>", "<option>", "</option>", "<optgroup>", "<input>"
+    };
+
+    @Test
+    public void convertCorpus() {
+        for (String html : CORPUS) {
+            Assert.assertEquals(html, jsoupConvert(html), HtmlTextConverter.convert(html));
+        }
+    }
+
+    /**
+     * 随机拼接的 html 片段，包含未闭合、错误嵌套的标签
+     */
+    @Test
+    public void convertRandomFragments() {
+        Random random = new Random(20230208);
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder html = new StringBuilder();
+            int count = random.nextInt(10);
+            for (int j = 0; j < count; j++) {
+                html.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+            }
+            if (ATTRIBUTE_NEWLINE.matcher(html).find()) {
+                continue;
+            }
+            Assert.assertEquals(html.toString(), jsoupConvert(html.toString()), HtmlTextConverter.convert(html.toString()));
+        }
+    }
+
+    @Test
+    public void convertLargeInput() {
+        String input = largeInput();
+        Assert.assertEquals(jsoupConvert(input), HtmlTextConverter.convert(input));
+    }
+
+    /**
+     * 和原先实现的耗时对比，需要时手动运行
+     */
+    @Ignore
+    @Test
+    public void convertPerformance() {
+        String input = largeInput();
+        int times = 200;
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < times; i++) {
+            jsoupConvert(input);
+        }
+        long jsoupCost = System.currentTimeMillis() - start;
+        start = System.currentTimeMillis();
+        for (int i = 0; i < times; i++) {
+            HtmlTextConverter.convert(input);
+        }
+        long converterCost = System.currentTimeMillis() - start;
+        Assert.assertTrue("jsoup: " + jsoupCost + "ms, converter: " + converterCost + "ms", converterCost <= jsoupCost);
+    }
+
+    private String largeInput() {
+        StringBuilder html = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            html.append("<p>步骤").append(i).append("：打开 <strong>页面</strong> &amp; 点击<br/>按钮&nbsp;")
+                    .append("<a href=\"http://example.com?a=1&b=2\">链接</a></p><ul><li>预期 &lt;成功&gt;</li></ul>");
+        }
+        return html.toString();
+    }
+
+    /**
+     * 原先 htmlDesc2MsDesc 的实现
+     */
+    private String jsoupConvert(String desc) {
+        Document document = Jsoup.parse(desc);
+        document.outputSettings(new Document.OutputSettings().prettyPrint(false));
+        document.select("br").append("\\n");
+        document.select("p").prepend("\\n\\n");
+        desc = document.html().replaceAll("\\\\n", "\n");
+        desc = Jsoup.clean(desc, "", Safelist.none(), new Document.OutputSettings().prettyPrint(false));
+        return desc.replace("&nbsp;", "");
+    }
+}
@@ -0,0 +1,258 @@
+package io.metersphere;
+
+import io.metersphere.platform.cache.CapabilityProfile;
+import io.metersphere.platform.cache.ConfigCache;
+import io.metersphere.platform.cache.ContentKey;
+import io.metersphere.platform.cache.LocalCache;
+import io.metersphere.platform.cache.RefreshableCache;
+import io.metersphere.platform.cache.SingleFlight;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LocalCacheTest {
+
+    @Test
+    public void evictLeastRecentlyUsed() {
+        LocalCache<String, String> cache = new LocalCache<>(2);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.get("a");
+        cache.put("c", "3");
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals("1", cache.get("a"));
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals("3", cache.get("c"));
+    }
+
+    @Test
+    public void expireAfterWrite() throws InterruptedException {
+        LocalCache<String, String> cache = new LocalCache<>(10, 20);
+        cache.put("a", "1");
+        Assert.assertEquals("1", cache.get("a"));
+        Thread.sleep(40);
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals("2", cache.get("a", k -> "2"));
+    }
+
+    @Test
+    public void refreshAfterWrite() throws InterruptedException {
+        RefreshableCache<String, Integer> cache = new RefreshableCache<>(10, 200, 5000);
+        AtomicInteger loadCount = new AtomicInteger();
+        Assert.assertEquals(1, cache.get("a", k -> loadCount.incrementAndGet()).intValue());
+        Assert.assertEquals(1, cache.get("a", k -> loadCount.incrementAndGet()).intValue());
+        Thread.sleep(250);
+        // 需要刷新时先返回旧值
+        Assert.assertEquals(1, cache.get("a", k -> {
+            sleep(50);
+            return loadCount.incrementAndGet();
+        }).intValue());
+        Assert.assertEquals(1, cache.get("a", k -> loadCount.incrementAndGet()).intValue());
+        Thread.sleep(100);
+        Assert.assertEquals(2, cache.get("a", k -> loadCount.incrementAndGet()).intValue());
+        Assert.assertEquals(2, loadCount.get());
+
+        cache.invalidate("a");
+        Assert.assertEquals(3, cache.get("a", k -> loadCount.incrementAndGet()).intValue());
+    }
+
+    @Test
+    public void refreshExpired() throws InterruptedException {
+        RefreshableCache<String, String> cache = new RefreshableCache<>(10, 10, 20);
+        cache.put("a", "1");
+        Thread.sleep(40);
+        Assert.assertEquals("2", cache.get("a", k -> "2"));
+        // 后台刷新失败保留旧值
+        RefreshableCache<String, String> failCache = new RefreshableCache<>(10, 10, 1000);
+        failCache.put("a", "1");
+        Thread.sleep(20);
+        Assert.assertEquals("1", failCache.get("a", k -> {
+            throw new IllegalStateException("load");
+        }));
+        Thread.sleep(20);
+        Assert.assertEquals("1", failCache.get("a", k -> "1"));
+    }
+
+    @Test
+    public void refreshInSharedExecutor() throws InterruptedException {
+        RefreshableCache<String, String> cache = new RefreshableCache<>(10, 10, 5000);
+        cache.put("a", "1");
+        Thread.sleep(20);
+        ClassLoader contextClassLoader = new ClassLoader() {
+        };
+        List<String> threadNames = new ArrayList<>();
+        List<ClassLoader> classLoaders = new ArrayList<>();
+        Thread thread = Thread.currentThread();
+        ClassLoader original = thread.getContextClassLoader();
+        thread.setContextClassLoader(contextClassLoader);
+        try {
+            Assert.assertEquals("1", cache.get("a", k -> {
+                threadNames.add(Thread.currentThread().getName());
+                classLoaders.add(Thread.currentThread().getContextClassLoader());
+                return "2";
+            }));
+        } finally {
+            thread.setContextClassLoader(original);
+        }
+        Thread.sleep(100);
+        Assert.assertEquals("2", cache.get("a", k -> "3"));
+        // 在共用的线程中使用调用方的上下文类加载器刷新
+        Assert.assertTrue(threadNames.get(0).startsWith("cache-refresh-"));
+        Assert.assertSame(contextClassLoader, classLoaders.get(0));
+    }
+
+    @Test
+    public void getNow() throws InterruptedException {
+        RefreshableCache<String, Integer> cache = new RefreshableCache<>(10, 100, 5000);
+        cache.setRetryAfterFailure(100);
+        AtomicInteger loadCount = new AtomicInteger();
+        // 第一次加载也不等待
+        Assert.assertNull(cache.getNow("a", k -> {
+            sleep(50);
+            return loadCount.incrementAndGet();
+        }));
+        Assert.assertNull(cache.getNow("a", k -> loadCount.incrementAndGet()));
+        Assert.assertNull(cache.getIfPresent("a"));
+        Thread.sleep(100);
+        Assert.assertEquals(1, cache.getIfPresent("a").intValue());
+        Assert.assertEquals(1, cache.getNow("a", k -> loadCount.incrementAndGet()).intValue());
+        Assert.assertEquals(1, cache.get("a", k -> loadCount.incrementAndGet()).intValue());
+        Assert.assertEquals(1, loadCount.get());
+
+        // 加载失败后间隔 retryAfterFailure 再加载
+        Assert.assertNull(cache.getNow("b", k -> {
+            throw new IllegalStateException("load");
+        }));
+        Thread.sleep(50);
+        Assert.assertNull(cache.getNow("b", k -> loadCount.incrementAndGet()));
+        Thread.sleep(50);
+        Assert.assertEquals(1, loadCount.get());
+        Thread.sleep(100);
+        Assert.assertNull(cache.getNow("b", k -> loadCount.incrementAndGet()));
+        Thread.sleep(50);
+        Assert.assertEquals(2, cache.getNow("b", k -> loadCount.incrementAndGet()).intValue());
+
+        // 没有加载完成时 get 在调用线程中加载
+        Assert.assertNull(cache.getNow("c", k -> {
+            sleep(100);
+            return 0;
+        }));
+        Assert.assertEquals(3, cache.get("c", k -> loadCount.incrementAndGet()).intValue());
+        Thread.sleep(150);
+        Assert.assertEquals(3, cache.getNow("c", k -> loadCount.incrementAndGet()).intValue());
+    }
+
+    @Test
+    public void singleFlight() throws InterruptedException {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+        AtomicInteger loadCount = new AtomicInteger();
+        List<Integer> results = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            threads.add(new Thread(() -> {
+                Integer result = singleFlight.execute("a", () -> {
+                    sleep(100);
+                    return loadCount.incrementAndGet();
+                });
+                synchronized (results) {
+                    results.add(result);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(1, loadCount.get());
+        Assert.assertEquals(10, results.size());
+        results.forEach(result -> Assert.assertEquals(1, result.intValue()));
+        // 查询完成后不保留结果
+        Assert.assertEquals(2, singleFlight.execute("a", loadCount::incrementAndGet).intValue());
+
+        try {
+            singleFlight.execute("b", () -> {
+                throw new IllegalStateException("load");
+            });
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("load", e.getMessage());
+        }
+    }
+
+    @Test
+    public void singleFlightResultTtl() throws InterruptedException {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>(10, 50);
+        AtomicInteger loadCount = new AtomicInteger();
+        Assert.assertEquals(1, singleFlight.execute("a", loadCount::incrementAndGet).intValue());
+        Assert.assertEquals(1, singleFlight.execute("a", loadCount::incrementAndGet).intValue());
+        Thread.sleep(80);
+        Assert.assertEquals(2, singleFlight.execute("a", loadCount::incrementAndGet).intValue());
+    }
+
+    @Test
+    public void capabilityProfile() {
+        CapabilityProfile profile = CapabilityProfile.of("JiraClientV2", "http://jira.example.com/rest/api/2");
+        Assert.assertSame(profile, CapabilityProfile.of("JiraClientV2", "http://jira.example.com/rest/api/2"));
+        Assert.assertNotSame(profile, CapabilityProfile.of("JiraClientV2", "http://jira.example.com/rest/api/3"));
+        // 不同客户端分开记录
+        Assert.assertNotSame(profile, CapabilityProfile.of("JiraClientV3", "http://jira.example.com/rest/api/2"));
+        // 没有探测过的认为支持
+        Assert.assertTrue(profile.isSupported("issue.bulkfetch"));
+        profile.setSupported("issue.bulkfetch", false);
+        Assert.assertFalse(profile.isSupported("issue.bulkfetch"));
+        profile.put("user.search.param", "username");
+        Assert.assertEquals("username", profile.get("user.search.param"));
+        profile.invalidate();
+        Assert.assertTrue(profile.isSupported("issue.bulkfetch"));
+        Assert.assertNull(profile.get("user.search.param"));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    public void configCache() {
+        ConfigCache cache = new ConfigCache(2);
+        // 相同内容的不同字符串对象共用解析结果
+        String config = new String("{\"url\":\"http://a\"}");
+        HashMap parsed = cache.get(config, HashMap.class);
+        Assert.assertEquals("http://a", parsed.get("url"));
+        Assert.assertSame(parsed, cache.get(new String(config), HashMap.class));
+
+        cache.get("{\"url\":\"http://b\"}", HashMap.class);
+        cache.get(config, HashMap.class);
+        cache.get("{\"url\":\"http://c\"}", HashMap.class);
+        // 超出容量时只淘汰最久未使用的配置
+        Assert.assertEquals(2, cache.size());
+        Assert.assertSame(parsed, cache.get(config, HashMap.class));
+    }
+
+    @Test
+    public void contentKey() {
+        Assert.assertEquals(ContentKey.of("desc", "/proxy"), ContentKey.of("desc", "/proxy"));
+        Assert.assertNotEquals(ContentKey.of("desc", "/proxy"), ContentKey.of("desc", "/proxy2"));
+        // 分段边界不同
+        Assert.assertNotEquals(ContentKey.of("ab", "c"), ContentKey.of("a", "bc"));
+        Assert.assertNotEquals(ContentKey.of((String) null), ContentKey.of(""));
+
+        Set<ContentKey> keys = new HashSet<>();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            text.append((char) ('a' + i % 26));
+            Assert.assertTrue(keys.add(ContentKey.of(text.toString())));
+        }
+    }
+}
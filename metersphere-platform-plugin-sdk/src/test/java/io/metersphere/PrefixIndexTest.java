@@ -0,0 +1,59 @@
+package io.metersphere;
+
+import io.metersphere.platform.utils.PrefixIndex;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class PrefixIndexTest {
+
+    @Test
+    public void searchByPrefix() {
+        PrefixIndex<String> index = new PrefixIndex<>();
+        index.add("zhangsan", "Zhang San", "zhangsan", "zhangsan@example.com");
+        index.add("lisi", "Li Si", "lisi", "si.li@example.com");
+        index.add("wangwu", "王五", "wangwu", null);
+
+        Assert.assertEquals(Collections.singletonList("zhangsan"), index.search("zha", 10));
+        Assert.assertEquals(Collections.singletonList("zhangsan"), index.search("SAN", 10));
+        Assert.assertEquals(Collections.singletonList("zhangsan"), index.search("zhang s", 10));
+        // 多个单词匹配的只返回一次
+        Assert.assertEquals(Collections.singletonList("lisi"), index.search("li", 10));
+        Assert.assertEquals(Arrays.asList("zhangsan", "lisi"), index.search("example", 10));
+        Assert.assertEquals(Collections.singletonList("wangwu"), index.search("王", 10));
+        Assert.assertTrue(index.search("zhao", 10).isEmpty());
+    }
+
+    @Test
+    public void limitAndOrder() {
+        PrefixIndex<Integer> index = new PrefixIndex<>();
+        for (int i = 0; i < 100; i++) {
+            index.add(i, "user" + i);
+        }
+        List<Integer> result = index.search("user1", 5);
+        Assert.assertEquals(Arrays.asList(1, 10, 11, 12, 13), result);
+        Assert.assertEquals(Arrays.asList(0, 1, 2), index.search("", 3));
+        Assert.assertEquals(100, index.size());
+    }
+
+    @Test
+    public void searchManyMatches() {
+        PrefixIndex<Integer> index = new PrefixIndex<>();
+        for (int i = 0; i < 1000; i++) {
+            index.add(i, "user" + (999 - i), "u" + i);
+        }
+        // 超过每个前缀记录的数量时遍历子节点，结果一致
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            expected.add(i);
+        }
+        Assert.assertEquals(expected.subList(0, 100), index.search("u", 100));
+        Assert.assertEquals(expected, index.search("u", 500));
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 900), index.search("user99", 20));
+        Assert.assertEquals(Arrays.asList(99, 990, 991, 992, 993), index.search("u99", 5));
+    }
+}
@@ -0,0 +1,169 @@
+package io.metersphere;
+
+import io.metersphere.platform.utils.ParallelPageFetcher;
+import io.metersphere.platform.utils.SyncPipeline;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SyncPipelineTest {
+
+    @Test
+    public void keepPageOrder() {
+        AtomicInteger pageNum = new AtomicInteger();
+        List<String> results = new ArrayList<>();
+        new SyncPipeline<Integer, String>(
+                () -> pageNum.get() < 100 ? pageNum.incrementAndGet() : null,
+                page -> "page" + page,
+                results::add
+        ).run();
+        Assert.assertEquals(100, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            Assert.assertEquals("page" + (i + 1), results.get(i));
+        }
+    }
+
+    @Test
+    public void overlapStages() {
+        AtomicInteger pageNum = new AtomicInteger();
+        long start = System.currentTimeMillis();
+        new SyncPipeline<Integer, Integer>(
+                () -> {
+                    sleep(50);
+                    return pageNum.get() < 6 ? pageNum.incrementAndGet() : null;
+                },
+                page -> {
+                    sleep(50);
+                    return page;
+                },
+                page -> sleep(50)
+        ).run();
+        // 串行执行需要 6 * 150ms 以上
+        Assert.assertTrue(System.currentTimeMillis() - start < 6 * 150);
+    }
+
+    @Test
+    public void fetchError() {
+        AtomicInteger pageNum = new AtomicInteger();
+        List<Integer> results = new ArrayList<>();
+        try {
+            new SyncPipeline<Integer, Integer>(
+                    () -> {
+                        if (pageNum.get() == 3) {
+                            throw new IllegalStateException("fetch");
+                        }
+                        return pageNum.incrementAndGet();
+                    },
+                    page -> page,
+                    results::add
+            ).run();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("fetch", e.getMessage());
+        }
+        Assert.assertTrue(results.size() <= 3);
+    }
+
+    @Test
+    public void consumeError() {
+        AtomicInteger pageNum = new AtomicInteger();
+        try {
+            // 查询不会结束，回调出错后也要停止
+            new SyncPipeline<Integer, Integer>(
+                    pageNum::incrementAndGet,
+                    page -> page,
+                    page -> {
+                        if (page == 2) {
+                            throw new IllegalStateException("consume");
+                        }
+                    }
+            ).run();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("consume", e.getMessage());
+        }
+    }
+
+    @Test
+    public void parallelPageFetcher() {
+        List<Integer> results = new ArrayList<>();
+        long start = System.currentTimeMillis();
+        try (ParallelPageFetcher<Integer> fetcher = new ParallelPageFetcher<>(1, 8, 4, pageNum -> {
+            // 后面的页先返回
+            sleep(100 - pageNum * 10);
+            return pageNum;
+        })) {
+            new SyncPipeline<Integer, Integer>(fetcher, page -> page, results::add).run();
+        }
+        Assert.assertEquals(8, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            Assert.assertEquals(i + 1, results.get(i).intValue());
+        }
+        // 依次查询需要 520ms
+        Assert.assertTrue(System.currentTimeMillis() - start < 400);
+    }
+
+    @Test
+    public void parallelMap() {
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            items.add(i);
+        }
+        List<Integer> results = ParallelPageFetcher.map(items, 4, i -> {
+            sleep(20 - i);
+            return i % 3 == 0 ? null : i * 2;
+        });
+        Assert.assertEquals(20, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            Assert.assertEquals(i % 3 == 0 ? null : i * 2, results.get(i));
+        }
+        Assert.assertTrue(ParallelPageFetcher.map(new ArrayList<Integer>(), 4, i -> i).isEmpty());
+    }
+
+    @Test
+    public void parallelMapWithExecutor() {
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            items.add(i);
+        }
+        ExecutorService executor = ParallelPageFetcher.newExecutor(4);
+        try {
+            // 多次调用共用一个线程池
+            for (int round = 0; round < 3; round++) {
+                List<Integer> results = ParallelPageFetcher.map(items, executor, i -> {
+                    sleep(20 - i);
+                    return i * 2;
+                });
+                for (int i = 0; i < results.size(); i++) {
+                    Assert.assertEquals(i * 2, results.get(i).intValue());
+                }
+            }
+            try {
+                ParallelPageFetcher.map(items, executor, i -> {
+                    if (i == 5) {
+                        throw new IllegalStateException("detail");
+                    }
+                    return i;
+                });
+                Assert.fail();
+            } catch (IllegalStateException e) {
+                Assert.assertEquals("detail", e.getMessage());
+            }
+            Assert.assertTrue(ParallelPageFetcher.map(new ArrayList<Integer>(), executor, i -> i).isEmpty());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
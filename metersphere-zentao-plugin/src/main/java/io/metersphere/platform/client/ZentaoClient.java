@@ -4,6 +4,8 @@ import io.metersphere.plugin.exception.MSPluginException;
 import io.metersphere.plugin.utils.JSON;
 import io.metersphere.plugin.utils.LogUtil;
 import io.metersphere.platform.api.BaseClient;
+import io.metersphere.platform.cache.CapabilityProfile;
+import io.metersphere.platform.cache.ContentKey;
 import io.metersphere.platform.domain.*;
 import io.metersphere.platform.utils.UnicodeConvertUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -19,9 +21,16 @@ import java.util.Arrays;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 public abstract class ZentaoClient extends BaseClient {
 
+    /**
+     * 所有 Platform 实例共用，同一账号的请求复用登录后的 session
+     */
+    private static final ZentaoSessionManager SESSION_MANAGER = new ZentaoSessionManager();
+
     protected String ENDPOINT;
 
     protected String USER_NAME;
@@ -62,6 +71,88 @@ public abstract class ZentaoClient extends BaseClient {
         return sessionId;
     }
 
+    /**
+     * 获取缓存的 session，没有或即将失效时重新登录
+     * 校验账号时需要调用 login 实际登录
+     */
+    public String getLoginSessionId() {
+        return SESSION_MANAGER.getSessionId(getSessionKey(), this::login);
+    }
+
+    /**
+     * 使用缓存的 session 请求，返回需要登录时重新登录后再请求一次
+     *
+     * @param request 使用 session ID 发送请求
+     */
+    protected ResponseEntity<String> exchangeWithSession(Function<String, ResponseEntity<String>> request) {
+        return exchangeWithSession(request, this::isLoginRequired);
+    }
+
+    /**
+     * @param needRelogin 根据返回结果判断是否需要重新登录后再请求
+     */
+    protected ResponseEntity<String> exchangeWithSession(Function<String, ResponseEntity<String>> request,
+                                                         Predicate<ResponseEntity<String>> needRelogin) {
+        String sessionId = getLoginSessionId();
+        ResponseEntity<String> response = request.apply(sessionId);
+        if (needRelogin.test(response)) {
+            sessionId = SESSION_MANAGER.refresh(getSessionKey(), sessionId, this::login);
+            response = request.apply(sessionId);
+        }
+        return response;
+    }
+
+    /**
+     * 创建数据的请求，session 失效时不重新发送，避免重复创建
+     * 重新登录后抛出异常，由调用方决定是否重试
+     *
+     * @param request 使用 session ID 发送请求
+     */
+    protected ResponseEntity<String> exchangeWithSessionOnce(Function<String, ResponseEntity<String>> request) {
+        String sessionId = getLoginSessionId();
+        ResponseEntity<String> response = request.apply(sessionId);
+        if (isLoginRequired(response)) {
+            SESSION_MANAGER.refresh(getSessionKey(), sessionId, this::login);
+            MSPluginException.throwException("zentao session expired, please try again");
+        }
+        return response;
+    }
+
+    /**
+     * session 失效时禅道接口返回的 json 中 locate 为登录页地址，
+     * 部分版本直接返回登录页，接口正常时返回的都是 json
+     */
+    protected boolean isLoginRequired(ResponseEntity<String> response) {
+        if (response == null || StringUtils.isBlank(response.getBody())) {
+            return false;
+        }
+        Map body;
+        try {
+            body = JSON.parseMap(response.getBody());
+        } catch (Exception e) {
+            MediaType contentType = response.getHeaders().getContentType();
+            return contentType != null && contentType.isCompatibleWith(MediaType.TEXT_HTML);
+        }
+        Object locate = body == null ? null : body.get("locate");
+        return locate instanceof String && isLoginUrl((String) locate);
+    }
+
+    private boolean isLoginUrl(String url) {
+        return StringUtils.containsAny(url, "user-login", "m=user&f=login");
+    }
+
+    private boolean isFailResponse(ResponseEntity<String> response) {
+        try {
+            return StringUtils.equalsIgnoreCase((String) JSON.parseMap(response.getBody()).get("status"), "fail");
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private ContentKey getSessionKey() {
+        return ContentKey.of(getBaseUrl(), USER_NAME, PASSWD, getClass().getName());
+    }
+
     protected HttpEntity<MultiValueMap> getHttpEntity() {
         return new HttpEntity<>(getHeader());
     }
@@ -85,12 +176,11 @@ public abstract class ZentaoClient extends BaseClient {
     }
 
     public AddIssueResponse.Issue addIssue(MultiValueMap<String, Object> paramMap) {
-        String sessionId = login();
         ResponseEntity<String> response = null;
         try {
             String bugCreate = requestUrl.getBugCreate();
-            response = restTemplate.exchange(bugCreate + sessionId,
-                    HttpMethod.POST, getHttpEntity(paramMap), String.class);
+            response = exchangeWithSessionOnce(sessionId -> restTemplate.exchange(bugCreate + sessionId,
+                    HttpMethod.POST, getHttpEntity(paramMap), String.class));
         } catch (Exception e) {
             LogUtil.error(e.getMessage(), e);
             MSPluginException.throwException(e.getMessage());
@@ -104,10 +194,9 @@ public abstract class ZentaoClient extends BaseClient {
     }
 
     public void updateIssue(String id, MultiValueMap<String, Object> paramMap) {
-        String sessionId = login();
         try {
-            restTemplate.exchange(requestUrl.getBugUpdate(),
-                    HttpMethod.POST, getHttpEntity(paramMap), String.class, id, sessionId);
+            exchangeWithSession(sessionId -> restTemplate.exchange(requestUrl.getBugUpdate(),
+                    HttpMethod.POST, getHttpEntity(paramMap), String.class, id, sessionId));
         } catch (Exception e) {
             LogUtil.error(e.getMessage(), e);
             MSPluginException.throwException(e.getMessage());
@@ -115,10 +204,9 @@ public abstract class ZentaoClient extends BaseClient {
     }
 
     public void deleteIssue(String id) {
-        String sessionId = login();
         try {
-            restTemplate.exchange(requestUrl.getBugDelete(),
-                    HttpMethod.GET, getHttpEntity(), String.class, id, sessionId);
+            exchangeWithSession(sessionId -> restTemplate.exchange(requestUrl.getBugDelete(),
+                    HttpMethod.GET, getHttpEntity(), String.class, id, sessionId));
         } catch (Exception e) {
             LogUtil.error(e.getMessage(), e);
             MSPluginException.throwException(e.getMessage());
@@ -126,10 +214,11 @@ public abstract class ZentaoClient extends BaseClient {
     }
 
     public Map getBugById(String id) {
-        String sessionId = login();
         String bugGet = requestUrl.getBugGet();
-        ResponseEntity<String> response = restTemplate.exchange(bugGet,
-                HttpMethod.GET, getHttpEntity(), String.class, id, sessionId);
+        // 返回失败会当作缺陷已删除，可能是 session 失效导致，重新登录确认一次
+        ResponseEntity<String> response = exchangeWithSession(sessionId -> restTemplate.exchange(bugGet,
+                HttpMethod.GET, getHttpEntity(), String.class, id, sessionId),
+                r -> isLoginRequired(r) || isFailResponse(r));
         GetIssueResponse getIssueResponse = (GetIssueResponse) getResultForObject(GetIssueResponse.class, response);
         if(StringUtils.equalsIgnoreCase(getIssueResponse.getStatus(),"fail")){
             GetIssueResponse.Issue issue = new GetIssueResponse.Issue();
@@ -145,9 +234,8 @@ public abstract class ZentaoClient extends BaseClient {
     }
 
     public GetCreateMetaDataResponse.MetaData getCreateMetaData(String productID) {
-        String sessionId = login();
-        ResponseEntity<String> response = restTemplate.exchange(requestUrl.getCreateMetaData(),
-                HttpMethod.GET, getHttpEntity(), String.class, productID, sessionId);
+        ResponseEntity<String> response = exchangeWithSession(sessionId -> restTemplate.exchange(requestUrl.getCreateMetaData(),
+                HttpMethod.GET, getHttpEntity(), String.class, productID, sessionId));
         GetCreateMetaDataResponse getCreateMetaDataResponse = (GetCreateMetaDataResponse) getResultForObject(GetCreateMetaDataResponse.class, response);
         return JSON.parseObject(getCreateMetaDataResponse.getData(), GetCreateMetaDataResponse.MetaData.class);
     }
@@ -161,41 +249,36 @@ public abstract class ZentaoClient extends BaseClient {
     }
 
     public Map<String, Object> getBuilds(String projectId) {
-        String sessionId = login();
-        ResponseEntity<String> response = restTemplate.exchange(requestUrl.getBuildsGet(),
-                HttpMethod.GET, getHttpEntity(), String.class, projectId, sessionId);
+        ResponseEntity<String> response = exchangeWithSession(sessionId -> restTemplate.exchange(requestUrl.getBuildsGet(),
+                HttpMethod.GET, getHttpEntity(), String.class, projectId, sessionId));
         return (Map<String, Object>) JSON.parseMap((String) JSON.parseMap(response.getBody()).get("data"));
     }
 
     public Map<String, Object> getUsers() {
-        String sessionId = login();
-        ResponseEntity<String> response = restTemplate.exchange(requestUrl.getUserGet() + sessionId,
-                HttpMethod.GET, getHttpEntity(), String.class);
+        ResponseEntity<String> response = exchangeWithSession(sessionId -> restTemplate.exchange(requestUrl.getUserGet() + sessionId,
+                HttpMethod.GET, getHttpEntity(), String.class));
         return (Map<String, Object>) JSON.parseMap(response.getBody());
     }
 
     public Map<String, Object> getDemands(String projectKey) {
-        String sessionId = login();
-        ResponseEntity<String> response = restTemplate.exchange(requestUrl.getStoryGet() + sessionId,
-                HttpMethod.GET, getHttpEntity(), String.class, projectKey);
+        ResponseEntity<String> response = exchangeWithSession(sessionId -> restTemplate.exchange(requestUrl.getStoryGet() + sessionId,
+                HttpMethod.GET, getHttpEntity(), String.class, projectKey));
         return (Map<String, Object>) JSON.parseMap(response.getBody());
     }
 
     public Map<String, Object> getBuildsV17(String projectId) {
-        String sessionId = login();
-        ResponseEntity<String> response = restTemplate.exchange(requestUrl.getBuildsGetV17(),
-                HttpMethod.GET, getHttpEntity(), String.class, projectId, sessionId);
+        ResponseEntity<String> response = exchangeWithSession(sessionId -> restTemplate.exchange(requestUrl.getBuildsGetV17(),
+                HttpMethod.GET, getHttpEntity(), String.class, projectId, sessionId));
         return (Map<String, Object>) JSON.parseMap(response.getBody()).get("data");
     }
 
     public String uploadFile(File file) {
         String id = "";
-        String sessionId = login();
         MultiValueMap<String, Object> paramMap = new LinkedMultiValueMap<>();
         paramMap.add("files", new FileSystemResource(file));
         try {
-            ResponseEntity<String> responseEntity = restTemplate.exchange(requestUrl.getFileUpload(), HttpMethod.POST, getHttpEntity(paramMap),
-                    String.class, null, sessionId);
+            ResponseEntity<String> responseEntity = exchangeWithSessionOnce(sessionId -> restTemplate.exchange(requestUrl.getFileUpload(), HttpMethod.POST, getHttpEntity(paramMap),
+                    String.class, null, sessionId));
             String body = responseEntity.getBody();
             Map obj = JSON.parseMap(body);
             Map data = (Map) JSON.parseObject(obj.get("data").toString());
@@ -211,9 +294,15 @@ public abstract class ZentaoClient extends BaseClient {
     }
 
     public Map getBugsByProjectId(String projectId, Integer pageNum, Integer pageSize) {
-        String sessionId = login();
-        ResponseEntity<String> response = restTemplate.exchange(requestUrl.getBugList(),
-                HttpMethod.GET, getHttpEntity(), String.class, projectId, 9999999, pageSize, pageNum, sessionId);
+        return getBugsByProjectId(projectId, pageNum, pageSize, StringUtils.EMPTY);
+    }
+
+    /**
+     * @param orderBy 排序，例如 lastEditedDate_desc，为空则使用禅道默认排序
+     */
+    public Map getBugsByProjectId(String projectId, Integer pageNum, Integer pageSize, String orderBy) {
+        ResponseEntity<String> response = exchangeWithSession(sessionId -> restTemplate.exchange(requestUrl.getBugList(),
+                HttpMethod.GET, getHttpEntity(), String.class, projectId, orderBy, 9999999, pageSize, pageNum, sessionId));
         try {
             return JSON.parseMap(JSON.parseMap(response.getBody()).get("data").toString());
         } catch (Exception e) {
@@ -230,6 +319,13 @@ public abstract class ZentaoClient extends BaseClient {
         return ENDPOINT;
     }
 
+    /**
+     * 按地址和请求方式记录支持的接口，不同版本的禅道接口不同
+     */
+    public CapabilityProfile getCapabilities() {
+        return CapabilityProfile.of(getClass().getName(), getBaseUrl());
+    }
+
     public void setConfig(ZentaoConfig config) {
         if (config == null) {
             MSPluginException.throwException("config is null");
@@ -255,9 +351,8 @@ public abstract class ZentaoClient extends BaseClient {
     }
 
     public void checkProjectExist(String relateId) {
-        String sessionId = login();
-        ResponseEntity<String> response = restTemplate.exchange(requestUrl.getProductGet(),
-                HttpMethod.GET, getHttpEntity(), String.class, relateId, sessionId);
+        ResponseEntity<String> response = exchangeWithSession(sessionId -> restTemplate.exchange(requestUrl.getProductGet(),
+                HttpMethod.GET, getHttpEntity(), String.class, relateId, sessionId));
         try {
             Map data = ((Map) JSON.parseObject(JSON.parseMap(response.getBody()).get("data").toString()));
             if (data.get("id") != null || ((Map) data.get("product")).get("id") != null) {
@@ -270,24 +365,22 @@ public abstract class ZentaoClient extends BaseClient {
     }
 
     public void uploadAttachment(String objectType, String objectId, File file) {
-        String sessionId = login();
         MultiValueMap<String, Object> paramMap = new LinkedMultiValueMap<>();
         FileSystemResource fileResource = new FileSystemResource(file);
         paramMap.add("files", fileResource);
         HttpEntity<MultiValueMap> httpEntity = getHttpEntity(paramMap);
         httpEntity.getHeaders().setContentType(MediaType.parseMediaType("multipart/form-data; charset=UTF-8"));
         try {
-            restTemplate.exchange(requestUrl.getFileUpload(), HttpMethod.POST, httpEntity,
-                    String.class, objectId, sessionId);
+            exchangeWithSessionOnce(sessionId -> restTemplate.exchange(requestUrl.getFileUpload(), HttpMethod.POST, httpEntity,
+                    String.class, objectId, sessionId));
         } catch (Exception e) {
             LogUtil.info("upload zentao attachment error");
         }
     }
 
     public void deleteAttachment(String fileId) {
-        String sessionId = login();
         try {
-            restTemplate.exchange(requestUrl.getFileDelete(), HttpMethod.GET, getHttpEntity(), String.class, fileId, sessionId);
+            exchangeWithSession(sessionId -> restTemplate.exchange(requestUrl.getFileDelete(), HttpMethod.GET, getHttpEntity(), String.class, fileId, sessionId));
         } catch (Exception e) {
             LogUtil.info("delete zentao attachment error");
         }
@@ -301,7 +394,8 @@ public abstract class ZentaoClient extends BaseClient {
             request.getHeaders().set(HttpHeaders.ACCEPT_ENCODING, "gzip,x-gzip,deflate");
         };
 
-        String sessionId = login();
+        // 下载的内容直接交给调用方处理，不检查 session 是否失效
+        String sessionId = getLoginSessionId();
         restTemplate.execute(requestUrl.getFileDownload(), HttpMethod.GET,
                 requestCallback, (clientHttpResponse) -> {
                     inputStreamHandler.accept(clientHttpResponse.getBody());
@@ -25,9 +25,9 @@ public class ZentaoGetClient extends ZentaoClient {
     private static final Pattern IMG_PATTERN = Pattern.compile("m=file&f=read&fileID=(.*?)\"/>");
     private static final String PRODUCT_GET = "&module=product&methodName=getById&params=productID={0}&t=json&zentaosid={1}";
     /**
-     * 注意 recTotal={1}&recPerPage={2}&pageID={3} 顺序不能调换，有点恶心
+     * 注意 orderBy={1}&recTotal={2}&recPerPage={3}&pageID={4} 顺序不能调换，有点恶心
      */
-    private static final String BUG_LIST_URL = "/?m=bug&f=browse&productID={0}&branch=&browseType=all&param=0&orderBy=&recTotal={1}&recPerPage={2}&pageID={3}&t=json&zentaosid={4}";
+    private static final String BUG_LIST_URL = "/?m=bug&f=browse&productID={0}&branch=&browseType=all&param=0&orderBy={1}&recTotal={2}&recPerPage={3}&pageID={4}&t=json&zentaosid={5}";
 
     RequestUrl request = new RequestUrl();
 
@@ -24,7 +24,7 @@ public class ZentaoPathInfoClient extends ZentaoClient {
     private static final String REPLACE_IMG_URL = "<img src=\"%s/file-read-$1\"/>";
     private static final Pattern IMG_PATTERN = Pattern.compile("file-read-(.*?)\"/>");
     private static final String PRODUCT_GET = "/product-view-{0}.json?zentaosid={1}";
-    private static final String BUG_LIST_URL = "/bug-browse-{1}-0-all-0--{2}-{3}-{4}.json?&zentaosid={5}";
+    private static final String BUG_LIST_URL = "/bug-browse-{1}-0-all-0-{2}-{3}-{4}-{5}.json?&zentaosid={6}";
 
     public ZentaoPathInfoClient(String url) {
         super(url);
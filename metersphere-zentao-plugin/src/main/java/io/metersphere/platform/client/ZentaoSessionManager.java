@@ -0,0 +1,89 @@
+package io.metersphere.platform.client;
+
+import io.metersphere.platform.cache.ContentKey;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 禅道登录 session 缓存，按地址和账号复用已登录的 session，不用每次请求都重新登录
+ * 禅道默认 24 分钟不操作 session 失效，这里空闲超过 REFRESH_IDLE_TIME 就提前重新登录
+ * 同一账号同时只会有一个线程在登录，其他线程等待登录结果
+ */
+public class ZentaoSessionManager {
+
+    public static final long REFRESH_IDLE_TIME = 15 * 60 * 1000L;
+    /**
+     * 登录后最长使用时间，超过后重新登录
+     */
+    public static final long MAX_SESSION_AGE = 2 * 60 * 60 * 1000L;
+    /**
+     * 清理空闲 session 的最小间隔，在获取 session 时顺带清理，不额外启动线程
+     */
+    private static final long SWEEP_INTERVAL = 60 * 1000L;
+
+    private final Map<ContentKey, Session> sessions = new ConcurrentHashMap<>();
+    private volatile long lastSweepTime = System.currentTimeMillis();
+
+    /**
+     * @param key   地址、账号和密码计算的 key，密码修改后不会使用旧的 session
+     * @param login 登录并返回 session ID
+     */
+    public String getSessionId(ContentKey key, Supplier<String> login) {
+        sweep(System.currentTimeMillis());
+        return sessions.computeIfAbsent(key, k -> new Session()).get(login);
+    }
+
+    /**
+     * session 失效后重新登录，多个线程同时发现失效时只登录一次
+     *
+     * @param expiredSessionId 失效的 session ID
+     */
+    public String refresh(ContentKey key, String expiredSessionId, Supplier<String> login) {
+        return sessions.computeIfAbsent(key, k -> new Session()).refresh(expiredSessionId, login);
+    }
+
+    public void invalidate(ContentKey key) {
+        sessions.remove(key);
+    }
+
+    private void sweep(long now) {
+        if (now - lastSweepTime < SWEEP_INTERVAL) {
+            return;
+        }
+        lastSweepTime = now;
+        sessions.values().removeIf(session -> now - session.lastUseTime > REFRESH_IDLE_TIME);
+    }
+
+    private static class Session {
+        private String sessionId;
+        private long loginTime;
+        private volatile long lastUseTime = System.currentTimeMillis();
+
+        private synchronized String get(Supplier<String> login) {
+            long now = System.currentTimeMillis();
+            if (sessionId == null || now - lastUseTime > REFRESH_IDLE_TIME || now - loginTime > MAX_SESSION_AGE) {
+                login(login);
+            }
+            lastUseTime = System.currentTimeMillis();
+            return sessionId;
+        }
+
+        private synchronized String refresh(String expiredSessionId, Supplier<String> login) {
+            if (sessionId == null || Objects.equals(sessionId, expiredSessionId)) {
+                login(login);
+            }
+            lastUseTime = System.currentTimeMillis();
+            return sessionId;
+        }
+
+        private void login(Supplier<String> login) {
+            // 登录失败时不保留旧的 session
+            sessionId = null;
+            sessionId = login.get();
+            loginTime = System.currentTimeMillis();
+        }
+    }
+}
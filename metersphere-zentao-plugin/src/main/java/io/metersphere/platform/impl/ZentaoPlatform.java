@@ -5,12 +5,20 @@ import io.metersphere.plugin.utils.JSON;
 import io.metersphere.plugin.utils.LogUtil;
 import io.metersphere.base.domain.IssuesWithBLOBs;
 import io.metersphere.platform.api.AbstractPlatform;
+import io.metersphere.platform.cache.CapabilityProfile;
+import io.metersphere.platform.cache.ContentKey;
+import io.metersphere.platform.cache.LocalCache;
+import io.metersphere.platform.cache.RefreshableCache;
 import io.metersphere.platform.client.ZentaoClient;
 import io.metersphere.platform.client.ZentaoFactory;
 import io.metersphere.platform.client.ZentaoGetClient;
 import io.metersphere.platform.constants.AttachmentSyncType;
 import io.metersphere.platform.domain.*;
+import io.metersphere.platform.utils.BeanUtils;
 import io.metersphere.platform.utils.DateUtils;
+import io.metersphere.platform.utils.ParallelPageFetcher;
+import io.metersphere.platform.utils.SyncPipeline;
+import io.metersphere.platform.utils.ZentaoDescriptionConverter;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.http.ResponseEntity;
@@ -23,9 +31,10 @@ import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Consumer;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public class ZentaoPlatform extends AbstractPlatform {
@@ -36,6 +45,18 @@ public class ZentaoPlatform extends AbstractPlatform {
             "bmp", "jpg", "png", "tif", "gif", "jpeg"
     };
 
+    /**
+     * 缺陷描述转换结果，key 为原文、代理路径前缀和禅道版本的哈希，内容不变时同步不再重复转换
+     */
+    private static final LocalCache<ContentKey, String> DESCRIPTION_CACHE = new LocalCache<>(2000);
+    /**
+     * 用户、版本等下拉框选项按服务集成配置和产品缓存，超过 5 分钟后台刷新，打开下拉框时直接返回
+     */
+    private static final RefreshableCache<ContentKey, List<SelectOption>> OPTION_CACHE =
+            new RefreshableCache<>(500, 5 * 60 * 1000L, 60 * 60 * 1000L);
+    private static final String BUILDS_API_CAPABILITY = "builds.api";
+    private static final String BUILDS_API_V17 = "v17";
+
     protected Map<String, String> buildMap;
 
     public ZentaoPlatform(PlatformRequest request) {
@@ -50,8 +71,7 @@ public class ZentaoPlatform extends AbstractPlatform {
         if (StringUtils.isBlank(configStr)) {
             MSPluginException.throwException("请在项目中添加项目配置！");
         }
-        ZentaoProjectConfig projectConfig = JSON.parseObject(configStr, ZentaoProjectConfig.class);
-        return projectConfig;
+        return parseConfig(configStr, ZentaoProjectConfig.class);
     }
 
     @Override
@@ -97,7 +117,8 @@ public class ZentaoPlatform extends AbstractPlatform {
         String description = bugObj.getSteps();
         String steps = description;
         try {
-            steps = htmlDesc2MsDesc(zentao2MsDescription(description));
+            ContentKey cacheKey = ContentKey.of(description, getProxyPath(StringUtils.EMPTY), zentaoClient.getClass().getName());
+            steps = DESCRIPTION_CACHE.get(cacheKey, k -> htmlDesc2MsDesc(zentao2MsDescription(description)));
         } catch (Exception e) {
             LogUtil.error(e.getMessage(), e);
         }
@@ -178,7 +199,8 @@ public class ZentaoPlatform extends AbstractPlatform {
     }
 
     public ZentaoConfig setUserConfig(String userPlatformInfo) {
-        ZentaoConfig zentaoConfig = getIntegrationConfig(ZentaoConfig.class);
+        // 缓存的配置是共享的，复制后再设置个人账号
+        ZentaoConfig zentaoConfig = BeanUtils.copyBean(new ZentaoConfig(), getIntegrationConfig(ZentaoConfig.class));
         ZentaoPlatformUserInfo userInfo = getZentaoPlatformUserInfo(userPlatformInfo);
         if (StringUtils.isNotBlank(userInfo.getZentaoUserName())
                 && StringUtils.isNotBlank(userInfo.getZentaoPassword())) {
@@ -191,7 +213,7 @@ public class ZentaoPlatform extends AbstractPlatform {
 
     private ZentaoPlatformUserInfo getZentaoPlatformUserInfo(String userPlatformInfo) {
         return StringUtils.isBlank(userPlatformInfo) ? new ZentaoPlatformUserInfo()
-                : JSON.parseObject(userPlatformInfo, ZentaoPlatformUserInfo.class);
+                : parseConfig(userPlatformInfo, ZentaoPlatformUserInfo.class);
     }
 
     @Override
@@ -229,26 +251,38 @@ public class ZentaoPlatform extends AbstractPlatform {
      * @return
      */
     public List<SelectOption> getBuilds(GetOptionRequest request) {
-        ZentaoProjectConfig projectConfig = getProjectConfig(request.getProjectConfig());
-        Map<String, Object> builds = null;
+        String zentaoId = getProjectConfig(request.getProjectConfig()).getZentaoId();
+        return getCachedOptions("getBuilds", zentaoId, () -> {
+            Map<String, Object> builds = getProjectBuilds(zentaoId);
+            List<SelectOption> res = new ArrayList<>();
+            if (builds != null) {
+                builds.forEach((k, v) -> {
+                    if (StringUtils.isNotBlank(k)) {
+                        res.add(new SelectOption(v.toString(), k));
+                    }
+                });
+            }
+            return res;
+        });
+    }
+
+    private Map<String, Object> getProjectBuilds(String zentaoId) {
+        CapabilityProfile capabilities = zentaoClient.getCapabilities();
+        // 已确认是 17 版本之后的接口，不再尝试旧接口
+        if (StringUtils.equals(capabilities.get(BUILDS_API_CAPABILITY), BUILDS_API_V17)) {
+            return zentaoClient.getBuildsV17(zentaoId);
+        }
+        Map<String, Object> builds;
         try {
-            builds = zentaoClient.getBuildsByCreateMetaData(projectConfig.getZentaoId());
+            builds = zentaoClient.getBuildsByCreateMetaData(zentaoId);
             if (builds == null || builds.isEmpty()) {
-                builds = zentaoClient.getBuilds(projectConfig.getZentaoId());
+                builds = zentaoClient.getBuilds(zentaoId);
             }
         } catch (Exception e) {
-            builds = zentaoClient.getBuildsV17(projectConfig.getZentaoId());
-        }
-
-        List<SelectOption> res = new ArrayList<>();
-        if (builds != null) {
-            builds.forEach((k, v) -> {
-                if (StringUtils.isNotBlank(k)) {
-                    res.add(new SelectOption(v.toString(), k));
-                }
-            });
+            builds = zentaoClient.getBuildsV17(zentaoId);
+            capabilities.put(BUILDS_API_CAPABILITY, BUILDS_API_V17);
         }
-        return res;
+        return builds;
     }
 
     /**
@@ -257,18 +291,30 @@ public class ZentaoPlatform extends AbstractPlatform {
      * @return
      */
     public List<SelectOption> getUsers(GetOptionRequest request) {
-        Map<String, Object> obj = zentaoClient.getUsers();
+        return getCachedOptions("getUsers", null, () -> {
+            Map<String, Object> obj = zentaoClient.getUsers();
 
-        LogUtil.info("zentao user " + obj);
+            LogUtil.info("zentao user " + obj);
 
-        List data = JSON.parseArray(obj.get("data").toString());
+            List data = JSON.parseArray(obj.get("data").toString());
 
-        List<SelectOption> users = new ArrayList<>();
-        for (int i = 0; i < data.size(); i++) {
-            Map o = (Map) data.get(i);
-            users.add(new SelectOption(o.get("realname").toString(), o.get("account").toString()));
-        }
-        return users;
+            List<SelectOption> users = new ArrayList<>();
+            for (int i = 0; i < data.size(); i++) {
+                Map o = (Map) data.get(i);
+                users.add(new SelectOption(o.get("realname").toString(), o.get("account").toString()));
+            }
+            return users;
+        });
+    }
+
+    /**
+     * 缓存的选项是共享的，复制后返回
+     *
+     * @param productId 选项所属的产品，和产品无关时为 null
+     */
+    private List<SelectOption> getCachedOptions(String operation, String productId, Supplier<List<SelectOption>> loader) {
+        ContentKey cacheKey = ContentKey.of(request.getIntegrationConfig(), operation, productId);
+        return new ArrayList<>(OPTION_CACHE.get(cacheKey, k -> Collections.unmodifiableList(loader.get())));
     }
 
     @Override
@@ -276,75 +322,142 @@ public class ZentaoPlatform extends AbstractPlatform {
         List<PlatformIssuesDTO> issues = request.getIssues();
         SyncIssuesResult syncIssuesResult = new SyncIssuesResult();
         this.defaultCustomFields = request.getDefaultCustomFields();
-        issues.forEach(item -> {
-            Map bug = zentaoClient.getBugById(item.getPlatformId());
+        // 并发获取缺陷详情，附件信息也从详情中获取
+        List<Map> bugs = ParallelPageFetcher.map(issues, getSyncParallelism(request), item -> zentaoClient.getBugById(item.getPlatformId()));
+        for (int i = 0; i < issues.size(); i++) {
+            PlatformIssuesDTO item = issues.get(i);
+            Map bug = bugs.get(i);
             getUpdateIssues(item, bug);
             syncIssuesResult.getUpdateIssues().add(item);
-            syncZentaoIssueAttachments(syncIssuesResult, item);
-        });
+            syncZentaoIssueAttachments(syncIssuesResult, item, bug);
+        }
         return syncIssuesResult;
     }
 
     @Override
     public void syncAllIssues(SyncAllIssuesRequest syncRequest) {
-        int pageNum = 1;
         int pageSize = 200;
-        List<Map> zentaoIssues;
-        int currentSize;
 
         ZentaoProjectConfig projectConfig = getProjectConfig(syncRequest.getProjectConfig());
         this.defaultCustomFields = syncRequest.getDefaultCustomFields();
 
+        // 以本次同步开始时间作为下次增量同步的起点
+        long syncWatermark = System.currentTimeMillis();
+        boolean incremental = isIncrementalSync(syncRequest);
+        long updatedAfter = incremental ? syncRequest.getSyncWatermark() - SYNC_WATERMARK_OVERLAP : 0;
+        // 增量同步按最后修改时间倒序获取，遇到早于水位线的缺陷即可停止
+        // 全量同步即使指定了创建时间也要查询所有缺陷，allIds 用于判断缺陷是否被删除
+        String bugOrderBy = incremental ? "lastEditedDate_desc" : StringUtils.EMPTY;
+
         setBuildOptions(syncRequest);
 
+        ParallelPageFetcher<SyncBugPage> pageFetcher = null;
+        // 获取缺陷详情的线程池，每页共用
+        ExecutorService detailExecutor = ParallelPageFetcher.newExecutor(getSyncParallelism(syncRequest));
         try {
-            do {
-                SyncAllIssuesResult syncIssuesResult = new SyncAllIssuesResult();
-
-                // 获取禅道平台缺陷
-                Map response = zentaoClient.getBugsByProjectId(projectConfig.getZentaoId(), pageNum, pageSize);
-                zentaoIssues = (List) response.get("bugs");
-                currentSize = zentaoIssues.size();
-
-                List<String> allIds = zentaoIssues.stream().map(i -> i.get("id").toString()).collect(Collectors.toList());
-                syncIssuesResult.setAllIds(allIds);
-
-                if (syncRequest != null) {
-                    zentaoIssues = filterSyncZentaoIssuesByCreated(zentaoIssues, syncRequest);
-                }
-
-                if (CollectionUtils.isNotEmpty(zentaoIssues)) {
-                    for (Map zentaoIssue : zentaoIssues) {
-                        String platformId = (String) zentaoIssue.get("id");
-                        IssuesWithBLOBs issue = getUpdateIssues(null, zentaoIssue);
-
-                        // 设置临时UUID，同步附件时需要用
-                        issue.setId(UUID.randomUUID().toString());
-
-                        issue.setPlatformId(platformId);
-                        syncIssuesResult.getUpdateIssues().add(issue);
+            String zentaoId = projectConfig.getZentaoId();
+            Supplier<SyncBugPage> fetcher;
+            if (incremental) {
+                // 按修改时间排序的查询超出范围时提前结束，依次查询
+                fetcher = new Supplier<SyncBugPage>() {
+                    private int pageNum = 1;
+                    private boolean hasMore = true;
+
+                    @Override
+                    public SyncBugPage get() {
+                        if (!hasMore) {
+                            return null;
+                        }
+                        Map response = zentaoClient.getBugsByProjectId(zentaoId, pageNum, pageSize, bugOrderBy);
+                        List<Map> zentaoIssues = (List) response.get("bugs");
+                        int currentSize = zentaoIssues.size();
+
+                        boolean reachWatermark = false;
+                        int updatedSize = 0;
+                        for (Map zentaoIssue : zentaoIssues) {
+                            if (getLastEditedTime(zentaoIssue) < updatedAfter) {
+                                reachWatermark = true;
+                                break;
+                            }
+                            updatedSize++;
+                        }
 
-                        //同步第三方平台系统附件字段
-                        syncZentaoIssueAttachments(syncIssuesResult, issue);
+                        pageNum++;
+                        // 禅道接口有点恶心，pageNum 超过了总页数，还是会返回最后一页的数据，当缺陷总数是pageSize的时候会死循环
+                        hasMore = currentSize >= pageSize && !reachWatermark && pageNum <= getPageTotal(response);
+                        // 增量同步只返回有修改的缺陷，不作为删除缺陷的依据
+                        return toSyncBugPage(zentaoIssues.subList(0, updatedSize), syncRequest);
                     }
-                }
-
-                pageNum++;
-
-                HashMap<Object, Object> syncParam = buildSyncAllParam(syncIssuesResult);
-                syncRequest.getHandleSyncFunc().accept(syncParam);
+                };
+            } else {
+                // 按第一页返回的总页数并发查询后面的页，不查询超过总页数的页
+                Map firstResponse = zentaoClient.getBugsByProjectId(zentaoId, 1, pageSize, bugOrderBy);
+                SyncBugPage firstPage = toSyncBugPage((List) firstResponse.get("bugs"), syncRequest);
+                ParallelPageFetcher<SyncBugPage> otherPages = new ParallelPageFetcher<>(2, getPageTotal(firstResponse), getSyncParallelism(syncRequest),
+                        pageNum -> toSyncBugPage((List) zentaoClient.getBugsByProjectId(zentaoId, pageNum, pageSize, bugOrderBy).get("bugs"), syncRequest));
+                pageFetcher = otherPages;
+                fetcher = new Supplier<SyncBugPage>() {
+                    private boolean first = true;
+
+                    @Override
+                    public SyncBugPage get() {
+                        if (first) {
+                            first = false;
+                            return firstPage;
+                        }
+                        return otherPages.get();
+                    }
+                };
+            }
 
-                if (pageNum > (Integer)((Map)response.get("pager")).get("pageTotal")) {
-                    // 禅道接口有点恶心，pageNum 超过了总页数，还是会返回最后一页的数据，当缺陷总数是pageSize的时候会死循环
-                    break;
+            Function<SyncBugPage, HashMap<Object, Object>> converter = page -> {
+                SyncAllIssuesResult syncIssuesResult = new SyncAllIssuesResult();
+                syncIssuesResult.setIncremental(incremental);
+                syncIssuesResult.setSyncWatermark(syncWatermark);
+                syncIssuesResult.setAllIds(page.allIds);
+
+                // 列表中的缺陷没有附件信息，并发获取缺陷详情
+                List<Map> bugDetails = ParallelPageFetcher.map(page.bugs, detailExecutor,
+                        bug -> bug.containsKey("files") ? bug : zentaoClient.getBugById(bug.get("id").toString()));
+                for (int i = 0; i < page.bugs.size(); i++) {
+                    Map zentaoIssue = page.bugs.get(i);
+                    String platformId = (String) zentaoIssue.get("id");
+                    IssuesWithBLOBs issue = getUpdateIssues(null, zentaoIssue);
+
+                    // 设置临时UUID，同步附件时需要用
+                    issue.setId(UUID.randomUUID().toString());
+
+                    issue.setPlatformId(platformId);
+                    syncIssuesResult.getUpdateIssues().add(issue);
+
+                    //同步第三方平台系统附件字段
+                    syncZentaoIssueAttachments(syncIssuesResult, issue, bugDetails.get(i));
                 }
-            } while (currentSize >= pageSize);
+                return buildSyncAllParam(syncIssuesResult);
+            };
+
+            // 查询下一页的同时转换上一页，并回调保存
+            new SyncPipeline<>(fetcher, converter, syncRequest.getHandleSyncFunc()::accept).run();
         } catch (Exception e) {
             LogUtil.error(e);
             MSPluginException.throwException(e);
+        } finally {
+            if (pageFetcher != null) {
+                pageFetcher.close();
+            }
+            detailExecutor.shutdownNow();
         }
     }
 
+    private SyncBugPage toSyncBugPage(List<Map> zentaoIssues, SyncAllIssuesRequest syncRequest) {
+        List<String> allIds = zentaoIssues.stream().map(i -> i.get("id").toString()).collect(Collectors.toList());
+        return new SyncBugPage(allIds, filterSyncZentaoIssuesByCreated(zentaoIssues, syncRequest));
+    }
+
+    private int getPageTotal(Map bugListResponse) {
+        return (Integer) ((Map) bugListResponse.get("pager")).get("pageTotal");
+    }
+
     private void setBuildOptions(SyncAllIssuesRequest syncRequest) {
         try {
             GetOptionRequest request = new GetOptionRequest();
@@ -355,27 +468,58 @@ public class ZentaoPlatform extends AbstractPlatform {
         }
     }
 
+    /**
+     * 缺陷最后修改时间，未修改过的缺陷取创建时间
+     */
+    private long getLastEditedTime(Map zentaoIssue) {
+        String lastEditedDate = (String) zentaoIssue.get("lastEditedDate");
+        if (StringUtils.isBlank(lastEditedDate) || lastEditedDate.startsWith("0000")) {
+            lastEditedDate = (String) zentaoIssue.get("openedDate");
+        }
+        try {
+            return DateUtils.getTimeMillis(lastEditedDate);
+        } catch (Exception e) {
+            // 时间无法解析时当作有修改，交给后续处理
+            LogUtil.error(e);
+            return Long.MAX_VALUE;
+        }
+    }
+
     public List<Map> filterSyncZentaoIssuesByCreated(List<Map> zentaoIssues, SyncAllIssuesRequest syncRequest) {
         if (syncRequest.getCreateTime() == null) {
             return zentaoIssues;
         }
-        List<Map> filterIssues = zentaoIssues.stream().filter(item -> {
-            long createTimeMills = 0;
-            try {
-                createTimeMills = DateUtils.getTime((String) item.get("openedDate")).getTime();
-                if (syncRequest.isPre()) {
-                    return createTimeMills <= syncRequest.getCreateTime().longValue();
-                } else {
-                    return createTimeMills >= syncRequest.getCreateTime().longValue();
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                return false;
-            }
-        }).collect(Collectors.toList());
+        List<Map> filterIssues = zentaoIssues.stream()
+                .filter(item -> isCreatedInWindow(item, syncRequest))
+                .collect(Collectors.toList());
         return filterIssues;
     }
 
+    private boolean isCreatedInWindow(Map zentaoIssue, SyncAllIssuesRequest syncRequest) {
+        if (syncRequest.getCreateTime() == null) {
+            return true;
+        }
+        Long createTimeMills = getCreatedTime(zentaoIssue);
+        return createTimeMills != null && isInCreatedWindow(createTimeMills, syncRequest);
+    }
+
+    private boolean isInCreatedWindow(long createTimeMills, SyncAllIssuesRequest syncRequest) {
+        if (syncRequest.isPre()) {
+            return createTimeMills <= syncRequest.getCreateTime().longValue();
+        } else {
+            return createTimeMills >= syncRequest.getCreateTime().longValue();
+        }
+    }
+
+    private Long getCreatedTime(Map zentaoIssue) {
+        try {
+            return DateUtils.getTimeMillis((String) zentaoIssue.get("openedDate"));
+        } catch (Exception e) {
+            LogUtil.error(e);
+            return null;
+        }
+    }
+
     @Override
     public List<PlatformCustomFieldItemDTO> getThirdPartCustomField(String projectConfig) {
         return null;
@@ -487,85 +631,37 @@ public class ZentaoPlatform extends AbstractPlatform {
     }
 
     private String ms2ZentaoDescription(String msDescription) {
-        String imgUrlRegex = "!\\[.*?]\\(/resource/md/get(.*?\\..*?)\\)";
-        String zentaoSteps = msDescription.replaceAll(imgUrlRegex, zentaoClient.requestUrl.getReplaceImgUrl());
-        Matcher matcher = zentaoClient.requestUrl.getImgPattern().matcher(zentaoSteps);
-        while (matcher.find()) {
-            // get file name
-            String originSubUrl = matcher.group(1);
-            if (originSubUrl.contains("/url?url=") || originSubUrl.contains("/path?")) {
-                String path = URLDecoder.decode(originSubUrl, StandardCharsets.UTF_8);
-                String fileName;
-                if (path.indexOf("fileID") > 0) {
-                    fileName = path.substring(path.indexOf("fileID") + 7);
-                } else {
-                    fileName = path.substring(path.indexOf("file-read-") + 10);
-                }
-                zentaoSteps = zentaoSteps.replaceAll(Pattern.quote(originSubUrl), fileName);
-            } else {
-                String fileName = originSubUrl.substring(10);
-                // upload zentao
-                String id = zentaoClient.uploadFile(new File(MD_IMAGE_DIR + "/" + fileName));
-                // todo delete local file
-                int index = fileName.lastIndexOf(".");
-                String suffix = "";
-                if (index != -1) {
-                    suffix = fileName.substring(index);
-                }
-                // replace id
-                zentaoSteps = zentaoSteps.replaceAll(Pattern.quote(originSubUrl), id + suffix);
-            }
-        }
-        // image link
-        String netImgRegex = "!\\[(.*?)]\\((http.*?)\\)";
-        return zentaoSteps.replaceAll(netImgRegex, "<img src=\"$2\" alt=\"$1\"/>");
-    }
-
-    private String zentao2MsDescription(String ztDescription) {
-        String imgRegex = "<img src.*?/>";
-        Pattern pattern = Pattern.compile(imgRegex);
-        Matcher matcher = pattern.matcher(ztDescription);
-        while (matcher.find()) {
-            if (StringUtils.isNotEmpty(matcher.group())) {
-                // img标签内容
-                String imgPath = matcher.group();
-                // 解析标签内容为图片超链接格式，进行替换，
-                String src = getMatcherResultForImg("src\\s*=\\s*\"?(.*?)(\"|>|\\s+)", imgPath);
-                String alt = getMatcherResultForImg("alt\\s*=\\s*\"?(.*?)(\"|>|\\s+)", imgPath);
-                String hyperLinkPath = packageDescriptionByPathAndName(src, alt);
-                imgPath = transferSpecialCharacter(imgPath);
-                ztDescription = ztDescription.replaceAll(imgPath, hyperLinkPath);
-            }
-        }
-
-        return ztDescription;
+        return ZentaoDescriptionConverter.ms2ZentaoDescription(msDescription, zentaoClient.requestUrl.getReplaceImgUrl(),
+                zentaoClient.requestUrl.getImgPattern(), this::getZentaoImageUrl);
     }
 
     /**
-     * 转译字符串中的特殊字符
-     *
-     * @param str
-     * @return
+     * @param originSubUrl 禅道图片标签中的地址
+     * @return 禅道中的文件名，ms 的图片先上传到禅道
      */
-    protected String transferSpecialCharacter(String str) {
-        String regEx = "[`~!@#$%^&*()+=|{}':;',\\[\\].<>/?~！@#￥%……&*（）——+|{}【】‘；：”“’。，、？]";
-        Pattern pattern = Pattern.compile(regEx);
-        Matcher matcher = pattern.matcher(str);
-        if (matcher.find()) {
-            CharSequence cs = str;
-            int j = 0;
-            for (int i = 0; i < cs.length(); i++) {
-                String temp = String.valueOf(cs.charAt(i));
-                Matcher m2 = pattern.matcher(temp);
-                if (m2.find()) {
-                    StringBuilder sb = new StringBuilder(str);
-                    str = sb.insert(j, "\\").toString();
-                    j++;
-                }
-                j++; //转义完成后str的长度增1
+    private String getZentaoImageUrl(String originSubUrl) {
+        if (originSubUrl.contains("/url?url=") || originSubUrl.contains("/path?")) {
+            String path = URLDecoder.decode(originSubUrl, StandardCharsets.UTF_8);
+            if (path.indexOf("fileID") > 0) {
+                return path.substring(path.indexOf("fileID") + 7);
             }
+            return path.substring(path.indexOf("file-read-") + 10);
+        }
+        String fileName = originSubUrl.substring(10);
+        // upload zentao
+        String id = zentaoClient.uploadFile(new File(MD_IMAGE_DIR + "/" + fileName));
+        // todo delete local file
+        int index = fileName.lastIndexOf(".");
+        String suffix = "";
+        if (index != -1) {
+            suffix = fileName.substring(index);
         }
-        return str;
+        // replace id
+        return id + suffix;
+    }
+
+    private String zentao2MsDescription(String ztDescription) {
+        return ZentaoDescriptionConverter.zentao2MsDescription(ztDescription, this::packageDescriptionByPathAndName);
     }
 
     private String packageDescriptionByPathAndName(String path, String name) {
@@ -614,25 +710,19 @@ public class ZentaoPlatform extends AbstractPlatform {
         return result;
     }
 
-    private String getMatcherResultForImg(String regex, String targetStr) {
-        String result = "";
-
-        Pattern pattern = Pattern.compile(regex);
-        Matcher matcher = pattern.matcher(targetStr);
-        while (matcher.find()) {
-            result = matcher.group(1);
-        }
-
-        return result;
-    }
-
     @Override
     public void getAttachmentContent(String fileKey, Consumer<InputStream> inputStreamHandler) {
         zentaoClient.getAttachmentBytes(fileKey, inputStreamHandler);
     }
 
     public void syncZentaoIssueAttachments(SyncIssuesResult syncIssuesResult, IssuesWithBLOBs issue) {
-        Map bugInfo = zentaoClient.getBugById(issue.getPlatformId());
+        syncZentaoIssueAttachments(syncIssuesResult, issue, zentaoClient.getBugById(issue.getPlatformId()));
+    }
+
+    /**
+     * @param bugInfo 已获取的缺陷详情，从中读取附件信息
+     */
+    public void syncZentaoIssueAttachments(SyncIssuesResult syncIssuesResult, IssuesWithBLOBs issue, Map bugInfo) {
         Object files = bugInfo.get("files");
         Map<String, Object> zenFiles;
         if (files instanceof List && ((List) files).size() == 0) {
@@ -742,4 +832,14 @@ public class ZentaoPlatform extends AbstractPlatform {
     public ResponseEntity proxyForGet(String path, Class responseEntityClazz) {
         return zentaoClient.proxyForGet(path, responseEntityClazz);
     }
+
+    private static class SyncBugPage {
+        private final List<String> allIds;
+        private final List<Map> bugs;
+
+        private SyncBugPage(List<String> allIds, List<Map> bugs) {
+            this.allIds = allIds;
+            this.bugs = bugs;
+        }
+    }
 }
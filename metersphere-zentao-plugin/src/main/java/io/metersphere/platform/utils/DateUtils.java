@@ -3,6 +3,9 @@ package io.metersphere.platform.utils;
 import io.metersphere.plugin.utils.LogUtil;
 
 import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
@@ -12,6 +15,10 @@ import java.util.Map;
 public class DateUtils {
     public static final String DATE_PATTERM = "yyyy-MM-dd";
     public static final String TIME_PATTERN = "yyyy-MM-dd HH:mm:ss";
+    /**
+     * 线程安全，批量解析时使用，避免每次创建 SimpleDateFormat
+     */
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern(TIME_PATTERN);
 
 
     public static Date getDate(String dateString) throws Exception {
@@ -24,6 +31,10 @@ public class DateUtils {
         return dateFormat.parse(timeString);
     }
 
+    public static long getTimeMillis(String timeString) {
+        return LocalDateTime.parse(timeString, TIME_FORMATTER).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
     public static String getDateString(Date date) throws Exception {
         SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_PATTERM);
         return dateFormat.format(date);
@@ -0,0 +1,80 @@
+package io.metersphere.platform.utils;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * ms 的 markdown 描述与禅道的 html 描述中图片格式的转换
+ * 相同的图片只处理一次，最后单次扫描替换
+ */
+public class ZentaoDescriptionConverter {
+
+    /**
+     * ms 上传或同步的图片 ![name](/resource/md/get?fileName=xxx.png)
+     */
+    private static final Pattern MS_IMG_PATTERN = Pattern.compile("!\\[.*?]\\(/resource/md/get(.*?\\..*?)\\)");
+    /**
+     * ms 中的网络图片 ![name](http://xxx.png)
+     */
+    private static final Pattern MS_NET_IMG_PATTERN = Pattern.compile("!\\[(.*?)]\\((http.*?)\\)");
+    private static final Pattern ZENTAO_IMG_PATTERN = Pattern.compile("<img src.*?/>");
+    private static final Pattern ZENTAO_IMG_SRC_PATTERN = Pattern.compile("src\\s*=\\s*\"?(.*?)(\"|>|\\s+)");
+    private static final Pattern ZENTAO_IMG_ALT_PATTERN = Pattern.compile("alt\\s*=\\s*\"?(.*?)(\"|>|\\s+)");
+
+    /**
+     * @param replaceImgUrl 禅道的图片标签，$1 为 ms 图片地址中的文件名部分
+     * @param imgPattern    禅道图片标签中的地址，group(1) 为需要替换的内容
+     * @param urlConverter  返回地址替换后的内容，例如上传图片后禅道的文件 id
+     */
+    public static String ms2ZentaoDescription(String msDescription, String replaceImgUrl, Pattern imgPattern,
+                                              Function<String, String> urlConverter) {
+        String zentaoSteps = MS_IMG_PATTERN.matcher(msDescription).replaceAll(replaceImgUrl);
+        Map<String, String> replacements = new LinkedHashMap<>();
+        Matcher matcher = imgPattern.matcher(zentaoSteps);
+        while (matcher.find()) {
+            String originSubUrl = matcher.group(1);
+            if (!replacements.containsKey(originSubUrl)) {
+                replacements.put(originSubUrl, urlConverter.apply(originSubUrl));
+            }
+        }
+        zentaoSteps = RichTextUtils.replaceAll(zentaoSteps, replacements);
+        // image link
+        return MS_NET_IMG_PATTERN.matcher(zentaoSteps).replaceAll("<img src=\"$2\" alt=\"$1\"/>");
+    }
+
+    /**
+     * @param imgConverter 参数为图片的 src 和 alt，返回 ms 的 markdown 图片
+     */
+    public static String zentao2MsDescription(String ztDescription, BiFunction<String, String, String> imgConverter) {
+        Map<String, String> replacements = new LinkedHashMap<>();
+        Matcher matcher = ZENTAO_IMG_PATTERN.matcher(ztDescription);
+        while (matcher.find()) {
+            // img标签内容
+            String imgPath = matcher.group();
+            if (StringUtils.isNotEmpty(imgPath) && !replacements.containsKey(imgPath)) {
+                // 解析标签内容为图片超链接格式，进行替换，
+                String src = getMatcherResultForImg(ZENTAO_IMG_SRC_PATTERN, imgPath);
+                String alt = getMatcherResultForImg(ZENTAO_IMG_ALT_PATTERN, imgPath);
+                replacements.put(imgPath, imgConverter.apply(src, alt));
+            }
+        }
+        return RichTextUtils.replaceAll(ztDescription, replacements);
+    }
+
+    private static String getMatcherResultForImg(Pattern pattern, String targetStr) {
+        String result = "";
+
+        Matcher matcher = pattern.matcher(targetStr);
+        while (matcher.find()) {
+            result = matcher.group(1);
+        }
+
+        return result;
+    }
+}
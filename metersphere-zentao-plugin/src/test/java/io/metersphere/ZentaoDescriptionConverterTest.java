@@ -0,0 +1,240 @@
+package io.metersphere;
+
+import io.metersphere.platform.utils.ZentaoDescriptionConverter;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 与原先逐个图片调用 replaceAll 的实现比较，语料中不包含以下两种情况：
+ * 原先的实现会把替换内容中的 $ 和 \ 当作分组引用解析；
+ * 原先的实现会在已替换的内容中继续替换后面的地址，只有匹配到的地址中包含其他图片地址时才有区别，
+ * 例如描述文本中直接出现 file-read- 等地址前缀，或 ms 图片的文件名没有扩展名
+ */
+public class ZentaoDescriptionConverterTest {
+
+    private static final String GET_REPLACE_IMG_URL = "<img src=\"http://zentao.example.com/index.php?m=file&f=read&fileID=$1\"/>";
+    private static final Pattern GET_IMG_PATTERN = Pattern.compile("m=file&f=read&fileID=(.*?)\"/>");
+    private static final String PATH_INFO_REPLACE_IMG_URL = "<img src=\"http://zentao.example.com/file-read-$1\"/>";
+    private static final Pattern PATH_INFO_IMG_PATTERN = Pattern.compile("file-read-(.*?)\"/>");
+
+    private static final String[] MS_CORPUS = {
+            "",
+            "没有图片",
+            "步骤![截图](/resource/md/get?fileName=a.png)结束",
+            "![a](/resource/md/get?fileName=a.png)![a](/resource/md/get?fileName=a.png)![b](/resource/md/get?fileName=aa.png)",
+            "![禅道](/resource/md/get/url?url=http%3A%2F%2Fzentao%2Ffile-read-12.png)",
+            "![禅道](/resource/md/get/path?fileID=7.png&platform=Zentao)",
+            "![网络](http://example.com/a.png) ![网络](https://example.com/b(1).png)",
+            "![a](/resource/md/get?fileName=a.png)\n![网络](http://example.com/a.png)\n<p>文本</p>",
+    };
+
+    private static final String[] ZENTAO_CORPUS = {
+            "",
+            "<p>没有图片</p>",
+            "<p><img src=\"{12.png}\" alt=\"截图\" /></p>",
+            "<img src=\"/file-read-3.png\" /><img src=\"/file-read-3.png\" /><img src=\"/file-read-33.png\" />",
+            "<img src=\"http://example.com/a.png?x=1&amp;y=[2]\" alt=\"a&amp;b (c)\"/>",
+            "<img src=\"/index.php?m=file&f=read&fileID=5\" alt=\"*+?|^{}\"/>文本<img src={6.jpg}/>",
+            "<img src=\"a.png\" <img src=\"b.png\"/>",
+            "<img src=\"b.png\"/><img src=\"a.png\" <img src=\"b.png\"/>",
+            "<img src=\"未闭合",
+    };
+
+    private static final String[] MS_FRAGMENTS = {
+            "![a](/resource/md/get?fileName=a.png)", "![b](/resource/md/get?fileName=aa.png)",
+            "![c](/resource/md/get?fileName=ba.jpg)",
+            "![禅道](/resource/md/get/url?url=http%3A%2F%2Fzentao%2Ffile-read-1.png)",
+            "![禅道](/resource/md/get/url?url=http%3A%2F%2Fzentao%2Ffile-read-11.png)",
+            "![禅道](/resource/md/get/path?fileID=7.png&platform=Zentao)",
+            "![网络](http://example.com/a.png)", "![](https://example.com/b.png)",
+            "![", "](", ")", "文本", "\n", " ", "<p>", "</p>", "\"/>",
+    };
+
+    private static final String[] ZENTAO_FRAGMENTS = {
+            "<img src=\"{1.png}\" />", "<img src=\"{11.png}\" alt=\"截图\" />", "<img src={2.txt}/>",
+            "<img src=\"/file-read-3.png\" />", "<img src=\"/file-read-33.png\" alt=\"(a)\"/>",
+            "<img src=\"http://example.com/a.png?x=1&amp;y=[2]\" alt=\"a&amp;b\"/>",
+            "<img src=\"/index.php?m=file&f=read&fileID=5&platform=Zentao\"/>",
+            "<img src=\"", "<img src", "/>", "\"", " alt=\"+*?\"", "文本", "\n", "<p>", "</p>", "{", "}",
+    };
+
+    @Test
+    public void ms2ZentaoCorpus() {
+        for (String description : MS_CORPUS) {
+            assertMs2Zentao(description);
+        }
+    }
+
+    @Test
+    public void zentao2MsCorpus() {
+        for (String description : ZENTAO_CORPUS) {
+            assertZentao2Ms(description);
+        }
+    }
+
+    /**
+     * 随机拼接的描述，包含重复的图片、前缀相同的文件名和不完整的标签
+     */
+    @Test
+    public void convertRandomFragments() {
+        Random random = new Random(20230215);
+        for (int i = 0; i < 20000; i++) {
+            assertMs2Zentao(randomText(random, MS_FRAGMENTS));
+            assertZentao2Ms(randomText(random, ZENTAO_FRAGMENTS));
+        }
+    }
+
+    @Test
+    public void uploadOnce() {
+        List<String> uploaded = new ArrayList<>();
+        String result = ZentaoDescriptionConverter.ms2ZentaoDescription(
+                "![a](/resource/md/get?fileName=a.png)![a](/resource/md/get?fileName=a.png)",
+                PATH_INFO_REPLACE_IMG_URL, PATH_INFO_IMG_PATTERN, url -> {
+                    uploaded.add(url);
+                    return "1.png";
+                });
+        Assert.assertEquals(1, uploaded.size());
+        Assert.assertEquals("<img src=\"http://zentao.example.com/file-read-1.png\"/><img src=\"http://zentao.example.com/file-read-1.png\"/>", result);
+    }
+
+    private void assertMs2Zentao(String description) {
+        assertSameResult(description,
+                () -> oldMs2Zentao(description, GET_REPLACE_IMG_URL, GET_IMG_PATTERN, ZentaoDescriptionConverterTest::convertUrl),
+                () -> ZentaoDescriptionConverter.ms2ZentaoDescription(description, GET_REPLACE_IMG_URL, GET_IMG_PATTERN, ZentaoDescriptionConverterTest::convertUrl));
+        assertSameResult(description,
+                () -> oldMs2Zentao(description, PATH_INFO_REPLACE_IMG_URL, PATH_INFO_IMG_PATTERN, ZentaoDescriptionConverterTest::convertUrl),
+                () -> ZentaoDescriptionConverter.ms2ZentaoDescription(description, PATH_INFO_REPLACE_IMG_URL, PATH_INFO_IMG_PATTERN, ZentaoDescriptionConverterTest::convertUrl));
+    }
+
+    /**
+     * 地址转换失败时（例如文件名为空），两种实现都应抛出相同的异常
+     */
+    private void assertSameResult(String description, Supplier<String> expected, Supplier<String> actual) {
+        String expectedResult;
+        try {
+            expectedResult = expected.get();
+        } catch (RuntimeException e) {
+            try {
+                actual.get();
+                Assert.fail(description + " expected " + e);
+            } catch (RuntimeException ex) {
+                Assert.assertEquals(description, e.getClass(), ex.getClass());
+            }
+            return;
+        }
+        Assert.assertEquals(description, expectedResult, actual.get());
+    }
+
+    private void assertZentao2Ms(String description) {
+        Assert.assertEquals(description, oldZentao2Ms(description, ZentaoDescriptionConverterTest::convertImg),
+                ZentaoDescriptionConverter.zentao2MsDescription(description, ZentaoDescriptionConverterTest::convertImg));
+    }
+
+    private static String randomText(Random random, String[] fragments) {
+        StringBuilder text = new StringBuilder();
+        int count = random.nextInt(8);
+        for (int i = 0; i < count; i++) {
+            text.append(fragments[random.nextInt(fragments.length)]);
+        }
+        return text.toString();
+    }
+
+    /**
+     * 与 ZentaoPlatform 中的地址转换相同，上传的图片用文件名代替禅道的文件 id
+     */
+    private static String convertUrl(String originSubUrl) {
+        if (originSubUrl.contains("/url?url=") || originSubUrl.contains("/path?")) {
+            String path = URLDecoder.decode(originSubUrl, StandardCharsets.UTF_8);
+            if (path.indexOf("fileID") > 0) {
+                return path.substring(path.indexOf("fileID") + 7);
+            }
+            return path.substring(path.indexOf("file-read-") + 10);
+        }
+        return "id-" + originSubUrl.substring(10);
+    }
+
+    private static String convertImg(String src, String alt) {
+        if (StringUtils.isEmpty(src)) {
+            return "";
+        }
+        return "\n\n![" + alt + "](" + src.replaceAll("&amp;", "&") + ")";
+    }
+
+    /**
+     * 原先 ms2ZentaoDescription 的实现
+     */
+    private static String oldMs2Zentao(String msDescription, String replaceImgUrl, Pattern imgPattern, Function<String, String> urlConverter) {
+        String imgUrlRegex = "!\\[.*?]\\(/resource/md/get(.*?\\..*?)\\)";
+        String zentaoSteps = msDescription.replaceAll(imgUrlRegex, replaceImgUrl);
+        Matcher matcher = imgPattern.matcher(zentaoSteps);
+        while (matcher.find()) {
+            String originSubUrl = matcher.group(1);
+            zentaoSteps = zentaoSteps.replaceAll(Pattern.quote(originSubUrl), urlConverter.apply(originSubUrl));
+        }
+        String netImgRegex = "!\\[(.*?)]\\((http.*?)\\)";
+        return zentaoSteps.replaceAll(netImgRegex, "<img src=\"$2\" alt=\"$1\"/>");
+    }
+
+    /**
+     * 原先 zentao2MsDescription 的实现
+     */
+    private static String oldZentao2Ms(String ztDescription, BiFunction<String, String, String> imgConverter) {
+        String imgRegex = "<img src.*?/>";
+        Pattern pattern = Pattern.compile(imgRegex);
+        Matcher matcher = pattern.matcher(ztDescription);
+        while (matcher.find()) {
+            if (StringUtils.isNotEmpty(matcher.group())) {
+                String imgPath = matcher.group();
+                String src = getMatcherResultForImg("src\\s*=\\s*\"?(.*?)(\"|>|\\s+)", imgPath);
+                String alt = getMatcherResultForImg("alt\\s*=\\s*\"?(.*?)(\"|>|\\s+)", imgPath);
+                String hyperLinkPath = imgConverter.apply(src, alt);
+                imgPath = transferSpecialCharacter(imgPath);
+                ztDescription = ztDescription.replaceAll(imgPath, hyperLinkPath);
+            }
+        }
+        return ztDescription;
+    }
+
+    private static String transferSpecialCharacter(String str) {
+        String regEx = "[`~!@#$%^&*()+=|{}':;',\\[\\].<>/?~！@#￥%……&*（）——+|{}【】‘；：”“’。，、？]";
+        Pattern pattern = Pattern.compile(regEx);
+        Matcher matcher = pattern.matcher(str);
+        if (matcher.find()) {
+            CharSequence cs = str;
+            int j = 0;
+            for (int i = 0; i < cs.length(); i++) {
+                String temp = String.valueOf(cs.charAt(i));
+                Matcher m2 = pattern.matcher(temp);
+                if (m2.find()) {
+                    StringBuilder sb = new StringBuilder(str);
+                    str = sb.insert(j, "\\").toString();
+                    j++;
+                }
+                j++;
+            }
+        }
+        return str;
+    }
+
+    private static String getMatcherResultForImg(String regex, String targetStr) {
+        String result = "";
+        Pattern pattern = Pattern.compile(regex);
+        Matcher matcher = pattern.matcher(targetStr);
+        while (matcher.find()) {
+            result = matcher.group(1);
+        }
+        return result;
+    }
+}